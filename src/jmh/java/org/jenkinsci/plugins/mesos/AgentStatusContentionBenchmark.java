@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.mesos;
+
+import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.PodStatus;
+import com.mesosphere.usi.core.models.PodStatusUpdatedEvent;
+import com.mesosphere.usi.core.models.TaskId;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.apache.mesos.v1.Protos.TaskID;
+import org.apache.mesos.v1.Protos.TaskState;
+import org.apache.mesos.v1.Protos.TaskStatus;
+import org.jenkinsci.plugins.mesos.fixture.AgentSpecMother;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import scala.Option;
+
+/**
+ * Measures the status reads of a {@link MesosJenkinsAgent} as done by {@link
+ * MesosRetentionStrategy} and {@link MesosCloud} while the USI event handler keeps updating the
+ * agent.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Group)
+public class AgentStatusContentionBenchmark {
+
+  private JenkinsRule jenkins;
+  private MesosJenkinsAgent agent;
+  private PodStatusUpdatedEvent staging;
+  private PodStatusUpdatedEvent running;
+  private boolean toggle = false;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    // The agent is a Jenkins node.
+    this.jenkins =
+        new JenkinsRule() {
+          @Override
+          public void recipe() {}
+        };
+    this.jenkins.before();
+    this.agent =
+        new MesosJenkinsAgent(
+            null,
+            "contention-agent",
+            AgentSpecMother.simple,
+            "An agent under contention.",
+            new URL("http://localhost:8080"),
+            5,
+            false,
+            Collections.emptyList(),
+            Duration.ofMinutes(5));
+    this.staging = event(TaskState.TASK_STAGING);
+    this.running = event(TaskState.TASK_RUNNING);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    this.jenkins.after();
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(7)
+  public void read(Blackhole bh) {
+    bh.consume(this.agent.isRunning());
+    bh.consume(this.agent.isKilled());
+    bh.consume(this.agent.isTerminalOrUnreachable());
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(1)
+  public void write() {
+    // There is a single writer per agent since events are partitioned by pod.
+    this.toggle = !this.toggle;
+    this.agent.update(this.toggle ? this.running : this.staging);
+  }
+
+  private static PodStatusUpdatedEvent event(TaskState state) {
+    final PodId podId = new PodId("contention-agent");
+    final TaskStatus taskStatus =
+        TaskStatus.newBuilder()
+            .setTaskId(TaskID.newBuilder().setValue("contention-agent-1234").build())
+            .setState(state)
+            .build();
+    final PodStatus status =
+        new PodStatus(
+            podId,
+            new scala.collection.immutable.Map.Map1<>(
+                new TaskId("contention-agent-1234"), taskStatus));
+    return new PodStatusUpdatedEvent(podId, Option.apply(status));
+  }
+}
@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.mesos;
+
+import com.google.protobuf.ByteString;
+import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.PodStatus;
+import com.mesosphere.usi.core.models.TaskId;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.apache.mesos.v1.Protos.AgentID;
+import org.apache.mesos.v1.Protos.ContainerStatus;
+import org.apache.mesos.v1.Protos.ExecutorID;
+import org.apache.mesos.v1.Protos.NetworkInfo;
+import org.apache.mesos.v1.Protos.TaskID;
+import org.apache.mesos.v1.Protos.TaskState;
+import org.apache.mesos.v1.Protos.TaskStatus;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reports the retained heap in bytes per tracked agent for the status of 10k agents. {@code full}
+ * retains the USI {@link PodStatus} with its Mesos protobufs as before, {@code compact} keeps only
+ * the {@link AgentStatus} record. The result is the {@code bytesPerAgent} secondary metric.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(
+    value = 1,
+    jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class AgentStatusFootprintBenchmark {
+
+  @Param({"10000"})
+  public int agents;
+
+  @Param({"full", "compact"})
+  public String representation;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Footprint {
+    public long bytesPerAgent;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.bytesPerAgent = 0;
+    }
+  }
+
+  @Benchmark
+  public List<AgentStatus> trackAgents(Footprint footprint) {
+    final long before = usedHeap();
+
+    final boolean retainFullStatus = "full".equals(representation);
+    final List<AgentStatus> statuses = new ArrayList<>(agents);
+    for (int i = 0; i < agents; i++) {
+      statuses.add(AgentStatus.of(podStatus(i), retainFullStatus));
+    }
+
+    footprint.bytesPerAgent = (usedHeap() - before) / agents;
+    return statuses;
+  }
+
+  /** Builds a status as reported by Mesos for a running Jenkins agent. */
+  private static PodStatus podStatus(int i) {
+    final String name = "jenkins-agent-" + UUID.randomUUID();
+    final PodId podId = new PodId(name);
+    final TaskStatus taskStatus =
+        TaskStatus.newBuilder()
+            .setTaskId(TaskID.newBuilder().setValue(name))
+            .setState(TaskState.TASK_RUNNING)
+            .setMessage("Container " + UUID.randomUUID() + " is running")
+            .setSource(TaskStatus.Source.SOURCE_EXECUTOR)
+            .setAgentId(AgentID.newBuilder().setValue("mesos-agent-" + (i % 100) + "-S0"))
+            .setExecutorId(ExecutorID.newBuilder().setValue(name))
+            .setTimestamp(System.currentTimeMillis() / 1000.0)
+            .setUuid(ByteString.copyFromUtf8(UUID.randomUUID().toString()))
+            .setHealthy(true)
+            .setContainerStatus(
+                ContainerStatus.newBuilder()
+                    .addNetworkInfos(
+                        NetworkInfo.newBuilder()
+                            .addIpAddresses(
+                                NetworkInfo.IPAddress.newBuilder()
+                                    .setIpAddress("10.0." + (i % 256) + "." + (i / 256 % 256)))))
+            .build();
+    return new PodStatus(
+        podId, new scala.collection.immutable.Map.Map1<>(new TaskId(name), taskStatus));
+  }
+
+  private static long usedHeap() {
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
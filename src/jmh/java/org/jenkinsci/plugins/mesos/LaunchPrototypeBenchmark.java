@@ -0,0 +1,74 @@
+package org.jenkinsci.plugins.mesos;
+
+import com.mesosphere.usi.core.models.commands.LaunchPod;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.jenkinsci.plugins.mesos.fixture.AgentSpecMother;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares building a {@link LaunchPod} from scratch with patching a cached {@link
+ * org.jenkinsci.plugins.mesos.api.LaunchPrototype}. Run with {@code -prof gc} to compare the
+ * allocations per launch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LaunchPrototypeBenchmark {
+
+  @Param({"simple", "docker"})
+  public String specName;
+
+  private JenkinsRule jenkins;
+  private MesosAgentSpecTemplate spec;
+  private URL jenkinsUrl;
+  private int counter = 0;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    // The JNLP secret requires a running Jenkins.
+    this.jenkins =
+        new JenkinsRule() {
+          @Override
+          public void recipe() {}
+        };
+    this.jenkins.before();
+    this.jenkinsUrl = this.jenkins.getURL();
+    this.spec = "docker".equals(specName) ? AgentSpecMother.docker : AgentSpecMother.simple;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    this.jenkins.after();
+  }
+
+  @Benchmark
+  public LaunchPod buildFromScratch() throws Exception {
+    return this.spec.buildLaunchPrototype(this.jenkinsUrl, "*", 1).newLaunchCommand(nextName());
+  }
+
+  @Benchmark
+  public LaunchPod buildFromPrototype() throws Exception {
+    return this.spec.buildLaunchCommand(this.jenkinsUrl, nextName(), "*");
+  }
+
+  private String nextName() {
+    return "jenkins-agent-benchmark-" + counter++;
+  }
+}
@@ -0,0 +1,109 @@
+package org.jenkinsci.plugins.mesos;
+
+import com.mesosphere.usi.core.models.AgentId;
+import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.PodRecord;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.collection.immutable.Map;
+import scala.compat.java8.FutureConverters;
+
+/**
+ * Measures the store and recover throughput of the {@link MesosPodRecordRepository} journal in
+ * records per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(MesosPodRecordRepositoryBenchmark.RECORDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MesosPodRecordRepositoryBenchmark {
+
+  static final int RECORDS = 10_000;
+
+  private PodRecord[] records;
+  private Path storeDirectory;
+  private Path recoverDirectory;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws Exception {
+    this.records = new PodRecord[RECORDS];
+    for (int i = 0; i < RECORDS; i++) {
+      this.records[i] =
+          new PodRecord(
+              new PodId("jenkins-agent-benchmark-" + i), Instant.now(), new AgentId("agent-" + i));
+    }
+
+    // Prepare a journal with all records for the recovery benchmark.
+    this.recoverDirectory = Files.createTempDirectory("mesos-journal-recover");
+    final MesosPodRecordRepository repository = new MesosPodRecordRepository(this.recoverDirectory);
+    storeAll(repository);
+    repository.close();
+  }
+
+  @Setup(Level.Invocation)
+  public void setUpInvocation() throws IOException {
+    this.storeDirectory = Files.createTempDirectory("mesos-journal-store");
+  }
+
+  @TearDown(Level.Invocation)
+  public void tearDownInvocation() throws IOException {
+    delete(this.storeDirectory);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() throws IOException {
+    delete(this.recoverDirectory);
+  }
+
+  @Benchmark
+  public void store() throws Exception {
+    final MesosPodRecordRepository repository = new MesosPodRecordRepository(this.storeDirectory);
+    storeAll(repository);
+    repository.close();
+  }
+
+  @Benchmark
+  public Map<Object, Object> recover() throws Exception {
+    final MesosPodRecordRepository repository = new MesosPodRecordRepository(this.recoverDirectory);
+    final Map<Object, Object> recovered =
+        FutureConverters.toJava(repository.readAll()).toCompletableFuture().get();
+    repository.close();
+    return recovered;
+  }
+
+  private void storeAll(MesosPodRecordRepository repository) throws Exception {
+    final CompletableFuture<?>[] writes = new CompletableFuture<?>[RECORDS];
+    for (int i = 0; i < RECORDS; i++) {
+      writes[i] = FutureConverters.toJava(repository.store(this.records[i])).toCompletableFuture();
+    }
+    CompletableFuture.allOf(writes).get();
+  }
+
+  private static void delete(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package org.jenkinsci.plugins.mesos;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the metrics cost of one provision call: marking the requested workload and fetching the
+ * USI metrics of the framework. {@code formatAndLookup} resolves the names on each call as before,
+ * {@code cachedHandles} uses {@link LabelMetrics} and the cached {@link Metrics#getInstance}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+  @Param({"linux"})
+  public String label;
+
+  @Param({"Jenkins Scheduler"})
+  public String frameworkName;
+
+  private static final Map<String, com.mesosphere.usi.metrics.Metrics> legacyMetrics =
+      new HashMap<>();
+
+  private JenkinsRule jenkinsRule;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    // The metrics registry belongs to the Jenkins metrics plugin.
+    this.jenkinsRule =
+        new JenkinsRule() {
+          @Override
+          public void recipe() {}
+        };
+    this.jenkinsRule.before();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    this.jenkinsRule.after();
+  }
+
+  @Benchmark
+  public Object formatAndLookup() {
+    jenkins.metrics.api.Metrics.metricRegistry()
+        .meter(String.format("mesos.cloud.%s.%s.%s", label, "provision", "request"))
+        .mark(1);
+    return legacyGetInstance(frameworkName);
+  }
+
+  @Benchmark
+  public Object cachedHandles() {
+    LabelMetrics.forLabel(label).provisionRequest().mark(1);
+    return Metrics.getInstance(frameworkName);
+  }
+
+  /** The former lookup that sanitizes the name under a global lock on each call. */
+  private static synchronized com.mesosphere.usi.metrics.Metrics legacyGetInstance(
+      String frameworkName) {
+    final String prefix = Metrics.sanitize(frameworkName);
+    if (!legacyMetrics.containsKey(prefix)) {
+      legacyMetrics.put(prefix, Metrics.getInstance(frameworkName));
+    }
+    return legacyMetrics.get(prefix);
+  }
+}
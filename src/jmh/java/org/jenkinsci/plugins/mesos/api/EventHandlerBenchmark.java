@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.mesos.api;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Source;
+import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.PodStatusUpdatedEvent;
+import com.mesosphere.usi.core.models.StateEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import scala.Option;
+
+/**
+ * Measures the throughput of {@link Session#partitionedEventHandler(int,
+ * java.util.function.Consumer)} in status events per second for a synthetic flow of 100k events.
+ * Each event costs a little CPU to stand in for the agent update.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(EventHandlerBenchmark.EVENTS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventHandlerBenchmark {
+
+  static final int EVENTS = 100_000;
+  private static final int PODS = 1_000;
+
+  @Param({"1", "4", "8"})
+  public int parallelism;
+
+  @Param({"100"})
+  public long tokensPerEvent;
+
+  private ActorSystem system;
+  private ActorMaterializer materializer;
+  private List<StateEvent> events;
+  private ConcurrentHashMap<PodId, LongAdder> updates;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.system = ActorSystem.create("event-handler-benchmark");
+    this.materializer = ActorMaterializer.create(system);
+    this.events = new ArrayList<>(EVENTS);
+    for (int i = 0; i < EVENTS; i++) {
+      this.events.add(new PodStatusUpdatedEvent(new PodId("agent-" + (i % PODS)), Option.empty()));
+    }
+    this.updates = new ConcurrentHashMap<>();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.system.terminate();
+  }
+
+  @Benchmark
+  public void handleStatusEvents() throws Exception {
+    Source.from(this.events)
+        .runWith(
+            Session.partitionedEventHandler(
+                parallelism,
+                event -> {
+                  Blackhole.consumeCPU(tokensPerEvent);
+                  this.updates
+                      .computeIfAbsent(((PodStatusUpdatedEvent) event).id(), id -> new LongAdder())
+                      .increment();
+                }),
+            this.materializer)
+        .toCompletableFuture()
+        .get();
+  }
+}
@@ -0,0 +1,209 @@
+package org.jenkinsci.plugins.mesos.api;
+
+import com.mesosphere.usi.core.models.TaskBuilder;
+import com.mesosphere.usi.core.models.TaskName;
+import com.mesosphere.usi.core.models.commands.LaunchPod;
+import com.mesosphere.usi.core.models.template.FetchUri;
+import hudson.model.Node;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.mesos.v1.Protos.AgentID;
+import org.apache.mesos.v1.Protos.ContainerInfo.DockerInfo.Network;
+import org.apache.mesos.v1.Protos.FrameworkID;
+import org.apache.mesos.v1.Protos.Offer;
+import org.apache.mesos.v1.Protos.OfferID;
+import org.apache.mesos.v1.Protos.Resource;
+import org.apache.mesos.v1.Protos.TaskInfo;
+import org.apache.mesos.v1.Protos.Value;
+import org.jenkinsci.plugins.mesos.MesosAgentSpecTemplate;
+import org.jenkinsci.plugins.mesos.MesosAgentSpecTemplate.ContainerInfo;
+import org.jenkinsci.plugins.mesos.MesosSlaveInfo;
+import org.jenkinsci.plugins.mesos.api.LaunchCommandBuilder.AgentCommandStyle;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.Option;
+import scala.collection.immutable.HashMap;
+import scala.collection.immutable.Map;
+import scala.collection.immutable.Seq;
+import scala.jdk.javaapi.CollectionConverters;
+
+/**
+ * Benchmarks the launch hot path: building the {@link LaunchPod} with {@link LaunchCommandBuilder}
+ * and {@link MesosAgentSpecTemplate#buildLaunchCommand(URL, String, String)}, and turning a
+ * synthetic {@link Offer} into a task info with the agent's {@link TaskBuilder}.
+ *
+ * <p>The matrix covers both command styles, no, Docker and UCR containers, and varying numbers of
+ * fetch URIs and agent attributes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LaunchCommandBenchmark {
+
+  @Param({"Linux", "Windows"})
+  public AgentCommandStyle style;
+
+  @Param({"NONE", "DOCKER", "MESOS"})
+  public String container;
+
+  @Param({"0", "10", "100"})
+  public int uriCount;
+
+  @Param({"0", "10"})
+  public int attributeCount;
+
+  private JenkinsRule jenkins;
+  private URL jenkinsUrl;
+  private LaunchCommandBuilder builder;
+  private MesosAgentSpecTemplate spec;
+  private TaskBuilder taskBuilder;
+  private Offer offer;
+  private Seq<Resource> taskResources;
+  private Map<TaskName, Seq<Resource>> peerTaskResources;
+  private int counter = 0;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    // The JNLP secret requires a running Jenkins.
+    this.jenkins =
+        new JenkinsRule() {
+          @Override
+          public void recipe() {}
+        };
+    this.jenkins.before();
+    this.jenkinsUrl = this.jenkins.getURL();
+
+    final Optional<ContainerInfo> containerInfo = buildContainerInfo();
+    final String attributes =
+        IntStream.range(0, attributeCount)
+            .mapToObj(i -> String.format("attribute%d:value%d", i, i))
+            .collect(Collectors.joining(","));
+    final List<MesosSlaveInfo.URI> uris =
+        IntStream.range(0, uriCount)
+            .mapToObj(i -> new MesosSlaveInfo.URI(uriValue(i), false, true))
+            .collect(Collectors.toList());
+    final List<FetchUri> fetchUris = new ArrayList<>();
+    for (MesosSlaveInfo.URI uri : uris) {
+      fetchUris.add(new FetchUri(new URI(uri.getValue()), true, false, false, Option.empty()));
+    }
+
+    this.builder =
+        new LaunchCommandBuilder()
+            .withCpu(0.1)
+            .withMemory(32)
+            .withDisk(0.0)
+            .withRole("*")
+            .withJenkinsUrl(this.jenkinsUrl)
+            .withContainerInfo(containerInfo)
+            .withAgentAttribute(attributes)
+            .withAgentCommandStyle(Optional.of(style))
+            .withAdditionalFetchUris(fetchUris);
+
+    this.spec =
+        new MesosAgentSpecTemplate(
+            "benchmark",
+            Node.Mode.EXCLUSIVE,
+            "0.1",
+            "32",
+            1,
+            1,
+            1,
+            "0",
+            "",
+            attributes,
+            uris,
+            containerInfo.orElse(null),
+            style,
+            null);
+
+    this.taskBuilder = this.builder.buildPrototype().newTaskBuilder("jenkins-agent-benchmark");
+    final List<Resource> resources =
+        Arrays.asList(scalar("cpus", 0.1), scalar("mem", 64), scalar("disk", 0));
+    this.offer =
+        Offer.newBuilder()
+            .setId(OfferID.newBuilder().setValue("offer-benchmark"))
+            .setFrameworkId(FrameworkID.newBuilder().setValue("framework-benchmark"))
+            .setAgentId(AgentID.newBuilder().setValue("agent-benchmark"))
+            .setHostname("localhost")
+            .addAllResources(resources)
+            .build();
+    this.taskResources = CollectionConverters.asScala(resources).toList();
+    this.peerTaskResources = new HashMap<>();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    this.jenkins.after();
+  }
+
+  @Benchmark
+  public LaunchPod launchCommandBuilder() throws Exception {
+    return this.builder.withName(nextName()).build();
+  }
+
+  @Benchmark
+  public LaunchPod agentSpecTemplate() throws Exception {
+    return this.spec.buildLaunchCommand(this.jenkinsUrl, nextName(), "*");
+  }
+
+  @Benchmark
+  public TaskInfo.Builder buildTask() {
+    final TaskInfo.Builder taskInfo = TaskInfo.newBuilder();
+    this.taskBuilder.buildTask(taskInfo, this.offer, this.taskResources, this.peerTaskResources);
+    return taskInfo;
+  }
+
+  private Optional<ContainerInfo> buildContainerInfo() {
+    if ("NONE".equals(container)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new ContainerInfo(
+            container,
+            "mesosphere/jenkins-dind:0.6.0-alpine",
+            false,
+            false,
+            false,
+            Collections.emptyList(),
+            Network.BRIDGE));
+  }
+
+  private static String uriValue(int i) {
+    return String.format("https://downloads.example.com/artifact-%d.tar.gz", i);
+  }
+
+  private static Resource scalar(String name, double value) {
+    return Resource.newBuilder()
+        .setName(name)
+        .setType(Value.Type.SCALAR)
+        .setScalar(Value.Scalar.newBuilder().setValue(value))
+        .build();
+  }
+
+  private String nextName() {
+    return "jenkins-agent-benchmark-" + counter++;
+  }
+}
@@ -0,0 +1,187 @@
+package org.jenkinsci.plugins.mesos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.mesos.v1.Protos.DomainInfo;
+
+/**
+ * The unallocated resources, attributes and fault domain of one Mesos agent as reported by the
+ * {@code GET_AGENTS} call of the Mesos operator API. It approximates what the agent could offer.
+ */
+final class AgentCapacity {
+
+  static final String UNRESERVED = "*";
+
+  private final String agentId;
+  // Unallocated scalar resources by reservation role and resource name.
+  private final Map<String, Map<String, Double>> free;
+  private final Map<String, String> attributes;
+  private final Optional<DomainInfo> domain;
+
+  AgentCapacity(
+      String agentId,
+      Map<String, Map<String, Double>> free,
+      Map<String, String> attributes,
+      Optional<DomainInfo> domain) {
+    this.agentId = agentId;
+    this.free = free;
+    this.attributes = attributes;
+    this.domain = domain;
+  }
+
+  /**
+   * Parses the agents of a {@code GET_AGENTS} response.
+   *
+   * @param response The JSON response of the Mesos master.
+   * @return the capacity of each agent.
+   */
+  static List<AgentCapacity> parseAgents(JSONObject response) {
+    final JSONArray agents =
+        response.optJSONObject("get_agents") == null
+            ? new JSONArray()
+            : response.getJSONObject("get_agents").optJSONArray("agents");
+    if (agents == null) {
+      return Collections.emptyList();
+    }
+    final List<AgentCapacity> result = new ArrayList<>(agents.size());
+    for (int i = 0; i < agents.size(); i++) {
+      final JSONObject agent = agents.getJSONObject(i);
+      final JSONObject info = agent.optJSONObject("agent_info");
+      if (info == null) {
+        continue;
+      }
+
+      final Map<String, Map<String, Double>> free = new HashMap<>();
+      addResources(free, agent.optJSONArray("total_resources"), 1);
+      addResources(free, agent.optJSONArray("allocated_resources"), -1);
+
+      final Map<String, String> attributes = new HashMap<>();
+      final JSONArray attributeArray = info.optJSONArray("attributes");
+      if (attributeArray != null) {
+        for (int j = 0; j < attributeArray.size(); j++) {
+          final JSONObject attribute = attributeArray.getJSONObject(j);
+          final JSONObject text = attribute.optJSONObject("text");
+          if (text != null) {
+            attributes.put(attribute.getString("name"), text.optString("value"));
+          }
+        }
+      }
+
+      final String agentId =
+          info.optJSONObject("id") == null ? "" : info.getJSONObject("id").optString("value");
+      result.add(new AgentCapacity(agentId, free, attributes, parseDomain(info)));
+    }
+    return result;
+  }
+
+  /**
+   * Parses the fault domain of the master from a {@code GET_MASTER} response.
+   *
+   * @param response The JSON response of the Mesos master.
+   * @return the domain of the master or empty if it has none.
+   */
+  static Optional<DomainInfo> parseMasterDomain(JSONObject response) {
+    final JSONObject master = response.optJSONObject("get_master");
+    if (master == null || master.optJSONObject("master_info") == null) {
+      return Optional.empty();
+    }
+    return parseDomain(master.getJSONObject("master_info"));
+  }
+
+  private static Optional<DomainInfo> parseDomain(JSONObject info) {
+    final JSONObject domain = info.optJSONObject("domain");
+    if (domain == null || domain.optJSONObject("fault_domain") == null) {
+      return Optional.empty();
+    }
+    final JSONObject faultDomain = domain.getJSONObject("fault_domain");
+    final JSONObject region = faultDomain.optJSONObject("region");
+    final JSONObject zone = faultDomain.optJSONObject("zone");
+    if (region == null || zone == null) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        DomainInfo.newBuilder()
+            .setFaultDomain(
+                DomainInfo.FaultDomain.newBuilder()
+                    .setRegion(
+                        DomainInfo.FaultDomain.RegionInfo.newBuilder()
+                            .setName(region.getString("name")))
+                    .setZone(
+                        DomainInfo.FaultDomain.ZoneInfo.newBuilder()
+                            .setName(zone.getString("name"))))
+            .build());
+  }
+
+  private static void addResources(
+      Map<String, Map<String, Double>> free, JSONArray resources, int sign) {
+    if (resources == null) {
+      return;
+    }
+    for (int i = 0; i < resources.size(); i++) {
+      final JSONObject resource = resources.getJSONObject(i);
+      final JSONObject scalar = resource.optJSONObject("scalar");
+      if (scalar == null) {
+        continue;
+      }
+      free.computeIfAbsent(roleOf(resource), role -> new HashMap<>())
+          .merge(resource.getString("name"), sign * scalar.optDouble("value", 0), Double::sum);
+    }
+  }
+
+  /** @return the role the resource is reserved for or {@link #UNRESERVED}. */
+  private static String roleOf(JSONObject resource) {
+    final JSONArray reservations = resource.optJSONArray("reservations");
+    if (reservations != null && !reservations.isEmpty()) {
+      return reservations.getJSONObject(reservations.size() - 1).optString("role", UNRESERVED);
+    }
+    return resource.optString("role", UNRESERVED);
+  }
+
+  /**
+   * @param resource The resource name, eg {@code cpus}.
+   * @param role The role of the framework.
+   * @return the unallocated amount that is unreserved or reserved for the role.
+   */
+  double getFree(String resource, String role) {
+    double amount = getFree(resource, UNRESERVED, this.free);
+    if (!UNRESERVED.equals(role)) {
+      amount += getFree(resource, role, this.free);
+    }
+    return amount;
+  }
+
+  /**
+   * @param resource The resource name, eg {@code cpus}.
+   * @return the unallocated amount for any role.
+   */
+  double getFreeForAnyRole(String resource) {
+    double amount = 0;
+    for (Map<String, Double> resources : this.free.values()) {
+      amount += resources.getOrDefault(resource, 0.0);
+    }
+    return amount;
+  }
+
+  private static double getFree(
+      String resource, String role, Map<String, Map<String, Double>> free) {
+    return free.getOrDefault(role, Collections.emptyMap()).getOrDefault(resource, 0.0);
+  }
+
+  String getAgentId() {
+    return this.agentId;
+  }
+
+  Map<String, String> getAttributes() {
+    return this.attributes;
+  }
+
+  Optional<DomainInfo> getDomain() {
+    return this.domain;
+  }
+}
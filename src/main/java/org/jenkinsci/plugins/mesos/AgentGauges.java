@@ -0,0 +1,125 @@
+package org.jenkinsci.plugins.mesos;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import hudson.Util;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the agents of one framework per label and lifecycle state. The counts are updated on each
+ * state transition and exposed as gauges, eg {@code mesos.framework.<name>.agents.<label>.pending},
+ * so that reading them does not iterate over all agents.
+ *
+ * <p>{@code pending}, {@code running} and {@code online} count the agents currently in the state.
+ * {@code terminal} counts all agents that became terminal.
+ *
+ * <p>The gauges are named after the framework name while connections are kept per framework id. A
+ * new connection with the same name replaces the gauges, so a closing connection only removes the
+ * gauges it registered itself.
+ */
+final class AgentGauges {
+
+  /** The lifecycle states of an agent. Each agent is in exactly one state. */
+  enum State {
+    // The agent is queued or its task is launching.
+    PENDING("pending"),
+    // The task is running but the Jenkins agent did not connect yet or disconnected.
+    RUNNING("running"),
+    // The Jenkins agent is connected.
+    ONLINE("online"),
+    TERMINAL("terminal");
+
+    private final String metric;
+
+    State(String metric) {
+      this.metric = metric;
+    }
+  }
+
+  private final MetricRegistry registry;
+  private final String prefix;
+  private final ConcurrentHashMap<String, Map<State, LongAdder>> counters =
+      new ConcurrentHashMap<>();
+  private final Set<Metric> gauges = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param registry The registry the gauges are registered with.
+   * @param frameworkName The name of the framework the agents belong to.
+   */
+  AgentGauges(MetricRegistry registry, String frameworkName) {
+    this.registry = registry;
+    this.prefix = String.format("mesos.framework.%s.agents", Metrics.sanitize(frameworkName));
+  }
+
+  /**
+   * Moves an agent from one state to another.
+   *
+   * @param label The label string of the agent.
+   * @param from The previous state or null if the agent was not counted before.
+   * @param to The new state or null if the agent should not be counted anymore.
+   */
+  void move(String label, State from, State to) {
+    if (from == to) {
+      return;
+    }
+    final Map<State, LongAdder> labelCounters =
+        this.counters.computeIfAbsent(Util.fixNull(label), this::register);
+    // Terminal agents stay counted.
+    if (from != null && from != State.TERMINAL) {
+      labelCounters.get(from).decrement();
+    }
+    if (to != null) {
+      labelCounters.get(to).increment();
+    }
+  }
+
+  /**
+   * @param label The label string of the agents.
+   * @param state The state of the agents.
+   * @return the current count.
+   */
+  long get(String label, State state) {
+    final Map<State, LongAdder> labelCounters = this.counters.get(Util.fixNull(label));
+    return (labelCounters == null) ? 0 : labelCounters.get(state).sum();
+  }
+
+  /**
+   * @param state The state of the agents.
+   * @return the current count over all labels.
+   */
+  long getTotal(State state) {
+    long total = 0;
+    for (Map<State, LongAdder> labelCounters : this.counters.values()) {
+      total += labelCounters.get(state).sum();
+    }
+    return total;
+  }
+
+  /** Removes the gauges of this instance from the registry. */
+  void close() {
+    this.registry.removeMatching((name, metric) -> this.gauges.contains(metric));
+    this.gauges.clear();
+    this.counters.clear();
+  }
+
+  private Map<State, LongAdder> register(String label) {
+    final String labelName = label.isEmpty() ? "nolabel" : label;
+    final Map<State, LongAdder> labelCounters = new EnumMap<>(State.class);
+    for (State state : State.values()) {
+      final LongAdder counter = new LongAdder();
+      labelCounters.put(state, counter);
+      final String name =
+          String.format("%s.%s.%s", this.prefix, Metrics.sanitize(labelName), state.metric);
+      final Gauge<Long> gauge = counter::sum;
+      this.gauges.add(gauge);
+      this.registry.remove(name);
+      this.registry.register(name, gauge);
+    }
+    return labelCounters;
+  }
+}
@@ -0,0 +1,163 @@
+package org.jenkinsci.plugins.mesos;
+
+import com.mesosphere.usi.core.models.PodStatus;
+import java.time.Instant;
+import java.util.Optional;
+import org.apache.mesos.v1.Protos.TaskState;
+import org.apache.mesos.v1.Protos.TaskStatus;
+
+/**
+ * An immutable and compact snapshot of the USI status of a {@link MesosJenkinsAgent}.
+ *
+ * <p>The flags are computed once per status update so that readers do not walk the task statuses on
+ * each call. Only the state, timestamp, Mesos agent id and a truncated message of the first task
+ * are kept. The full {@link PodStatus} is retained for debugging only if the system property {@code
+ * org.jenkinsci.plugins.mesos.AgentStatus.retainFullStatus} is set to true.
+ */
+public final class AgentStatus {
+
+  static final boolean RETAIN_FULL_STATUS =
+      Boolean.getBoolean(AgentStatus.class.getName() + ".retainFullStatus");
+
+  static final int MAX_MESSAGE_LENGTH = 256;
+
+  /** The status of an agent before USI reported anything. */
+  public static final AgentStatus UNKNOWN =
+      new AgentStatus(TaskState.TASK_UNKNOWN, 0L, null, "", false, false, false, null);
+
+  private final TaskState state;
+  private final long timestampMillis;
+  private final String agentId;
+  private final String message;
+  private final boolean running;
+  private final boolean killed;
+  private final boolean terminalOrUnreachable;
+  private final PodStatus podStatus;
+
+  private AgentStatus(
+      TaskState state,
+      long timestampMillis,
+      String agentId,
+      String message,
+      boolean running,
+      boolean killed,
+      boolean terminalOrUnreachable,
+      PodStatus podStatus) {
+    this.state = state;
+    this.timestampMillis = timestampMillis;
+    this.agentId = agentId;
+    this.message = message;
+    this.running = running;
+    this.killed = killed;
+    this.terminalOrUnreachable = terminalOrUnreachable;
+    this.podStatus = podStatus;
+  }
+
+  /**
+   * @param podStatus The status reported by USI.
+   * @return a snapshot of the passed status.
+   */
+  public static AgentStatus of(PodStatus podStatus) {
+    return of(podStatus, RETAIN_FULL_STATUS);
+  }
+
+  /**
+   * @param podStatus The status reported by USI.
+   * @param retainFullStatus Whether to keep the passed status for debugging.
+   * @return a snapshot of the passed status.
+   */
+  static AgentStatus of(PodStatus podStatus, boolean retainFullStatus) {
+    final boolean running =
+        podStatus
+            .taskStatuses()
+            .values()
+            .forall(taskStatus -> taskStatus.getState() == TaskState.TASK_RUNNING);
+    final boolean killed =
+        podStatus
+            .taskStatuses()
+            .values()
+            .forall(taskStatus -> taskStatus.getState() == TaskState.TASK_KILLED);
+    final PodStatus retained = retainFullStatus ? podStatus : null;
+
+    if (podStatus.taskStatuses().isEmpty()) {
+      return new AgentStatus(
+          TaskState.TASK_UNKNOWN,
+          System.currentTimeMillis(),
+          null,
+          "",
+          running,
+          killed,
+          podStatus.isTerminalOrUnreachable(),
+          retained);
+    }
+
+    final TaskStatus taskStatus = podStatus.taskStatuses().values().head();
+    final long timestampMillis =
+        taskStatus.hasTimestamp()
+            ? (long) (taskStatus.getTimestamp() * 1000)
+            : System.currentTimeMillis();
+    // Many agents run on the same Mesos agent so the ids are shared.
+    final String agentId =
+        taskStatus.hasAgentId() ? taskStatus.getAgentId().getValue().intern() : null;
+    return new AgentStatus(
+        taskStatus.getState(),
+        timestampMillis,
+        agentId,
+        truncate(taskStatus.getMessage()),
+        running,
+        killed,
+        podStatus.isTerminalOrUnreachable(),
+        retained);
+  }
+
+  private static String truncate(String message) {
+    if (message.length() <= MAX_MESSAGE_LENGTH) {
+      return message;
+    } else {
+      return message.substring(0, MAX_MESSAGE_LENGTH);
+    }
+  }
+
+  /** @return the state of the first task or {@link TaskState#TASK_UNKNOWN} if there is none. */
+  public TaskState getState() {
+    return this.state;
+  }
+
+  /** @return the time of the status update. */
+  public Instant getTimestamp() {
+    return Instant.ofEpochMilli(this.timestampMillis);
+  }
+
+  /** @return the id of the Mesos agent the task was placed on if known. */
+  public Optional<String> getAgentId() {
+    return Optional.ofNullable(this.agentId);
+  }
+
+  /** @return the status message of the first task truncated to 256 characters. */
+  public String getMessage() {
+    return this.message;
+  }
+
+  /**
+   * @return the full status reported by USI if it is retained for debugging. See {@link
+   *     #RETAIN_FULL_STATUS}.
+   */
+  public Optional<PodStatus> getPodStatus() {
+    return Optional.ofNullable(this.podStatus);
+  }
+
+  /** @return whether all tasks of the agent are running. */
+  public boolean isRunning() {
+    return this.running;
+  }
+
+  /** @return whether all tasks of the agent are killed. */
+  public boolean isKilled() {
+    return this.killed;
+  }
+
+  /** @return whether the agent is terminal or unreachable. */
+  public boolean isTerminalOrUnreachable() {
+    return this.terminalOrUnreachable;
+  }
+}
@@ -0,0 +1,144 @@
+package org.jenkinsci.plugins.mesos;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * A bounded history of the lifecycle events of one agent, eg task state transitions, kill requests
+ * and the agent coming online or going offline.
+ *
+ * <p>Each timeline is a ring buffer of at most {@link #MAX_EVENTS_PER_AGENT} events. The timelines
+ * are kept in a registry by pod id that holds at most {@link #MAX_AGENTS} timelines. The timeline
+ * of the agent that was seen first is dropped once the registry is full. The timeline of an agent
+ * outlives the agent so that a failed launch can be inspected afterwards. With messages of up to
+ * {@link AgentStatus#MAX_MESSAGE_LENGTH} characters the registry retains a few megabytes at most.
+ */
+public final class AgentTimeline {
+
+  static final int MAX_EVENTS_PER_AGENT = 64;
+  static final int MAX_AGENTS = 128;
+
+  // Timelines by pod id in the order the agents were first seen.
+  private static final Map<String, AgentTimeline> timelines =
+      new LinkedHashMap<String, AgentTimeline>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AgentTimeline> eldest) {
+          return size() > MAX_AGENTS;
+        }
+      };
+
+  /** The kind of a lifecycle event. */
+  public enum Type {
+    QUEUED,
+    STATUS,
+    KILL,
+    ONLINE,
+    OFFLINE
+  }
+
+  /** A timestamped lifecycle event. */
+  public static final class Event {
+    private final long timestampMillis;
+    private final Type type;
+    private final String message;
+
+    Event(long timestampMillis, Type type, String message) {
+      this.timestampMillis = timestampMillis;
+      this.type = type;
+      this.message = message;
+    }
+
+    public Instant getTimestamp() {
+      return Instant.ofEpochMilli(this.timestampMillis);
+    }
+
+    public Type getType() {
+      return this.type;
+    }
+
+    public String getMessage() {
+      return this.message;
+    }
+
+    JSONObject toJSON() {
+      final JSONObject json = new JSONObject();
+      json.put("timestamp", getTimestamp().toString());
+      json.put("type", this.type.name());
+      json.put("message", this.message);
+      return json;
+    }
+  }
+
+  private final Event[] events = new Event[MAX_EVENTS_PER_AGENT];
+  private int next = 0;
+  private int size = 0;
+
+  /**
+   * Records an event for an agent.
+   *
+   * @param podId The pod id of the agent.
+   * @param type The kind of the event.
+   * @param message A description of the event. It is truncated to the length of an {@link
+   *     AgentStatus} message.
+   */
+  public static void record(String podId, Type type, String message) {
+    final AgentTimeline timeline;
+    synchronized (timelines) {
+      timeline = timelines.computeIfAbsent(podId, id -> new AgentTimeline());
+    }
+    final String truncated =
+        (message.length() <= AgentStatus.MAX_MESSAGE_LENGTH)
+            ? message
+            : message.substring(0, AgentStatus.MAX_MESSAGE_LENGTH);
+    timeline.add(new Event(System.currentTimeMillis(), type, truncated));
+  }
+
+  /**
+   * @param podId The pod id of the agent.
+   * @return the timeline of the agent if it is still tracked.
+   */
+  public static Optional<AgentTimeline> get(String podId) {
+    synchronized (timelines) {
+      return Optional.ofNullable(timelines.get(podId));
+    }
+  }
+
+  /** @return the pod ids of all tracked timelines in the order the agents were first seen. */
+  public static List<String> getPodIds() {
+    synchronized (timelines) {
+      return new ArrayList<>(timelines.keySet());
+    }
+  }
+
+  private synchronized void add(Event event) {
+    this.events[this.next] = event;
+    this.next = (this.next + 1) % this.events.length;
+    this.size = Math.min(this.size + 1, this.events.length);
+  }
+
+  /** @return the recorded events from oldest to newest. */
+  public synchronized List<Event> getEvents() {
+    final List<Event> ordered = new ArrayList<>(this.size);
+    final int first = (this.next - this.size + this.events.length) % this.events.length;
+    for (int i = 0; i < this.size; i++) {
+      ordered.add(this.events[(first + i) % this.events.length]);
+    }
+    return Collections.unmodifiableList(ordered);
+  }
+
+  /** @return the recorded events from oldest to newest as JSON array. */
+  public JSONArray toJSON() {
+    final JSONArray json = new JSONArray();
+    for (Event event : getEvents()) {
+      json.add(event.toJSON());
+    }
+    return json;
+  }
+}
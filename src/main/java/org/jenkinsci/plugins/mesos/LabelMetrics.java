@@ -0,0 +1,127 @@
+package org.jenkinsci.plugins.mesos;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The metric handles of one agent label, eg {@code mesos.cloud.<label>.provision.request}.
+ *
+ * <p>The handles are resolved once per label and registry so that the provisioning hot path does
+ * neither format metric names nor look them up in the registry. The cache is reset when Jenkins
+ * replaces the registry, eg on a restart.
+ */
+final class LabelMetrics {
+
+  private static final ConcurrentHashMap<String, LabelMetrics> labels = new ConcurrentHashMap<>();
+
+  private final MetricRegistry registry;
+  private final Meter provisionRequest;
+  private final Timer provisionReady;
+  private final Histogram poolIdle;
+  private final Meter poolHit;
+  private final Meter poolMiss;
+  private final Timer poolIdleTime;
+  private final Map<LaunchPhases.Phase, Timer> launchPhases =
+      new EnumMap<>(LaunchPhases.Phase.class);
+  private final Map<OfferDiagnostics.Reason, Meter> offerRejections =
+      new EnumMap<>(OfferDiagnostics.Reason.class);
+  private final Meter offerDeadlineExceeded;
+  private final Meter offerDeadlineRerouted;
+
+  private LabelMetrics(MetricRegistry registry, String label) {
+    this.registry = registry;
+    final String prefix = "mesos.cloud." + label;
+    this.provisionRequest = registry.meter(prefix + ".provision.request");
+    this.provisionReady = registry.timer(prefix + ".provision.ready");
+    this.poolIdle = registry.histogram(prefix + ".pool.idle");
+    this.poolHit = registry.meter(prefix + ".pool.hit");
+    this.poolMiss = registry.meter(prefix + ".pool.miss");
+    this.poolIdleTime = registry.timer(prefix + ".pool.idle-time");
+    for (LaunchPhases.Phase phase : LaunchPhases.Phase.values()) {
+      this.launchPhases.put(phase, registry.timer(prefix + ".launch." + phase.getMetric()));
+    }
+    this.offerDeadlineExceeded = registry.meter(prefix + ".offer-deadline.exceeded");
+    this.offerDeadlineRerouted = registry.meter(prefix + ".offer-deadline.rerouted");
+    for (OfferDiagnostics.Reason reason : OfferDiagnostics.Reason.values()) {
+      this.offerRejections.put(
+          reason, registry.meter(prefix + ".offer-rejected." + reason.getMetric()));
+    }
+  }
+
+  /**
+   * @param label The label text or null for agents without label.
+   * @return the cached metric handles of the label.
+   */
+  static LabelMetrics forLabel(String label) {
+    final String key = (label == null) ? "nolabel" : label;
+    final MetricRegistry registry = jenkins.metrics.api.Metrics.metricRegistry();
+    final LabelMetrics cached = labels.get(key);
+    if (cached != null && cached.registry == registry) {
+      return cached;
+    }
+    final LabelMetrics resolved = new LabelMetrics(registry, key);
+    labels.put(key, resolved);
+    return resolved;
+  }
+
+  /** @return the meter of the requested workload. */
+  Meter provisionRequest() {
+    return this.provisionRequest;
+  }
+
+  /** @return the timer from adding an agent to Jenkins until it is online. */
+  Timer provisionReady() {
+    return this.provisionReady;
+  }
+
+  /** @return the histogram of idle agents in the warm pool. */
+  Histogram poolIdle() {
+    return this.poolIdle;
+  }
+
+  /** @return the meter of tasks that found an idle agent waiting. */
+  Meter poolHit() {
+    return this.poolHit;
+  }
+
+  /** @return the meter of tasks that had to wait for an agent. */
+  Meter poolMiss() {
+    return this.poolMiss;
+  }
+
+  /** @return the timer of how long an agent was idle before it accepted a task. */
+  Timer poolIdleTime() {
+    return this.poolIdleTime;
+  }
+
+  /**
+   * @param phase A launch phase.
+   * @return the timer of the launch phase.
+   */
+  Timer launchPhase(LaunchPhases.Phase phase) {
+    return this.launchPhases.get(phase);
+  }
+
+  /**
+   * @param reason The constraint that ruled out a Mesos agent.
+   * @return the meter of Mesos agents that were ruled out for the reason.
+   */
+  Meter offerRejected(OfferDiagnostics.Reason reason) {
+    return this.offerRejections.get(reason);
+  }
+
+  /** @return the meter of launches that did not match an offer before the deadline. */
+  Meter offerDeadlineExceeded() {
+    return this.offerDeadlineExceeded;
+  }
+
+  /** @return the meter of launches that were re-routed after they missed the deadline. */
+  Meter offerDeadlineRerouted() {
+    return this.offerDeadlineRerouted;
+  }
+}
@@ -0,0 +1,97 @@
+package org.jenkinsci.plugins.mesos;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.mesos.v1.Protos.TaskState;
+
+/**
+ * Records the latency of each phase of an agent launch in a timer per label, eg {@code
+ * mesos.cloud.<label>.launch.running}.
+ *
+ * <p>Each timer measures the time since the previous phase was reached. The first phase is measured
+ * from the creation of the agent. A phase that is skipped, eg because a status update was missed,
+ * is attributed to the next phase that is reached. Phases that are reached out of order are
+ * ignored.
+ */
+final class LaunchPhases {
+
+  /** The phases of an agent launch in order. */
+  enum Phase {
+    // The launch command was accepted by the USI command queue.
+    QUEUED("queued"),
+    // USI matched an offer and launched the pod.
+    OFFER_MATCHED("offer-matched"),
+    STAGING("staging"),
+    STARTING("starting"),
+    RUNNING("running"),
+    // The Jenkins agent connected.
+    ONLINE("online");
+
+    private final String metric;
+
+    Phase(String metric) {
+      this.metric = metric;
+    }
+
+    String getMetric() {
+      return this.metric;
+    }
+  }
+
+  private final String label;
+  private Phase last = null;
+  private long lastNanos;
+
+  /** @param label The label string of the agent. */
+  LaunchPhases(String label) {
+    this.label = (label == null || label.isEmpty()) ? "nolabel" : label;
+    this.lastNanos = System.nanoTime();
+  }
+
+  /**
+   * Records the time since the previous phase if the passed phase was not reached before.
+   *
+   * @param phase The phase that was reached.
+   */
+  synchronized void reached(Phase phase) {
+    if (last != null && last.compareTo(phase) >= 0) {
+      return;
+    }
+    final long now = System.nanoTime();
+    LabelMetrics.forLabel(this.label)
+        .launchPhase(phase)
+        .update(now - this.lastNanos, TimeUnit.NANOSECONDS);
+    this.last = phase;
+    this.lastNanos = now;
+  }
+
+  /**
+   * Records the phase of a Mesos task state. States without a launch phase are ignored.
+   *
+   * @param state The state of the agent's task.
+   */
+  void reached(TaskState state) {
+    switch (state) {
+      case TASK_STAGING:
+        reached(Phase.STAGING);
+        break;
+      case TASK_STARTING:
+        reached(Phase.STARTING);
+        break;
+      case TASK_RUNNING:
+        reached(Phase.RUNNING);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /** @return whether the launch is queued but USI did not match an offer yet. */
+  synchronized boolean isWaitingForOffer() {
+    return this.last == null || this.last == Phase.QUEUED;
+  }
+
+  /** Marks the launch as done without recording anything, eg for an adopted agent. */
+  synchronized void skip() {
+    this.last = Phase.ONLINE;
+  }
+}
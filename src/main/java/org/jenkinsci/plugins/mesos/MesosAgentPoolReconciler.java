@@ -0,0 +1,32 @@
+package org.jenkinsci.plugins.mesos;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import java.util.concurrent.TimeUnit;
+import jenkins.model.Jenkins;
+
+/**
+ * Periodically tops up the warm pools of idle agents configured by {@link
+ * MesosAgentSpecTemplate#getMinIdle()} and trims them to {@link
+ * MesosAgentSpecTemplate#getMaxIdle()}.
+ */
+@Extension
+public class MesosAgentPoolReconciler extends AsyncPeriodicWork {
+
+  public MesosAgentPoolReconciler() {
+    super("Mesos agent pool reconciler");
+  }
+
+  @Override
+  public long getRecurrencePeriod() {
+    return TimeUnit.SECONDS.toMillis(30);
+  }
+
+  @Override
+  protected void execute(TaskListener listener) {
+    for (MesosCloud cloud : Jenkins.get().clouds.getAll(MesosCloud.class)) {
+      cloud.reconcileAgentPools();
+    }
+  }
+}
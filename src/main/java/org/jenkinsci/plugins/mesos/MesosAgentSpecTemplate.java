@@ -15,17 +15,21 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import org.apache.commons.lang.StringUtils;
 import org.apache.mesos.v1.Protos.ContainerInfo.DockerInfo.Network;
 import org.jenkinsci.plugins.mesos.api.LaunchCommandBuilder;
+import org.jenkinsci.plugins.mesos.api.LaunchPrototype;
 import org.jenkinsci.plugins.mesos.api.RunTemplateFactory.ContainerInfoTaskInfoBuilder;
 import org.jenkinsci.plugins.mesos.config.models.faultdomain.DomainFilterModel;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +40,9 @@ public class MesosAgentSpecTemplate extends AbstractDescribableImpl<MesosAgentSp
 
   private static final Logger logger = LoggerFactory.getLogger(MesosAgentSpecTemplate.class);
 
+  // The length of a random UUID in its string representation.
+  private static final int UUID_LENGTH = 36;
+
   private final String label;
   private Set<LabelAtom> labelSet;
 
@@ -54,6 +61,16 @@ public class MesosAgentSpecTemplate extends AbstractDescribableImpl<MesosAgentSp
   private final ContainerInfo containerInfo;
   private final DomainFilterModel domainFilterModel;
 
+  // Launch prototypes keyed by Jenkins URL, role and number of executors. A reconfiguration creates
+  // new templates so the cache never holds stale specs.
+  private transient Map<String, LaunchPrototype> launchPrototypes;
+
+  // Warm pool of idle agents kept online by MesosCloud#reconcileAgentPools.
+  private int minIdle = 0;
+  private int maxIdle = 0;
+  private int offerMatchDeadlineSeconds = 0;
+  private String fallbackLabel = "";
+
   @DataBoundConstructor
   public MesosAgentSpecTemplate(
       String label,
@@ -128,6 +145,60 @@ public class MesosAgentSpecTemplate extends AbstractDescribableImpl<MesosAgentSp
    */
   public LaunchPod buildLaunchCommand(URL jenkinsUrl, String name, String role)
       throws MalformedURLException, URISyntaxException {
+    return buildLaunchCommand(jenkinsUrl, name, role, 1);
+  }
+
+  /**
+   * Creates a LaunchPod command to to create a new Jenkins agent with multiple executors via USI.
+   * The CPUs, memory and disk of this template are reserved per executor.
+   *
+   * @param jenkinsUrl the URL of the jenkins master.
+   * @param name The name of the node to launch.
+   * @param role The Mesos role for the task.
+   * @param numExecutors The number of executors of the agent.
+   * @return a LaunchPod command to be passed to USI.
+   * @throws MalformedURLException If a fetch URL is not well formed.
+   * @throws URISyntaxException IF the fetch URL cannot be converted into a proper URI.
+   */
+  public LaunchPod buildLaunchCommand(URL jenkinsUrl, String name, String role, int numExecutors)
+      throws MalformedURLException, URISyntaxException {
+    return getLaunchPrototype(jenkinsUrl, role, numExecutors).newLaunchCommand(name);
+  }
+
+  /**
+   * Returns the cached prototype for the LaunchPod commands of this template.
+   *
+   * @param jenkinsUrl the URL of the jenkins master.
+   * @param role The Mesos role for the task.
+   * @param numExecutors The number of executors of the agent.
+   * @return a prototype for LaunchPod commands.
+   * @throws MalformedURLException If a fetch URL is not well formed.
+   * @throws URISyntaxException IF the fetch URL cannot be converted into a proper URI.
+   */
+  LaunchPrototype getLaunchPrototype(URL jenkinsUrl, String role, int numExecutors)
+      throws MalformedURLException, URISyntaxException {
+    final String key = String.format("%s|%s|%d", jenkinsUrl, role, numExecutors);
+    final Map<String, LaunchPrototype> prototypes = getLaunchPrototypes();
+    LaunchPrototype prototype = prototypes.get(key);
+    if (prototype == null) {
+      prototype = buildLaunchPrototype(jenkinsUrl, role, numExecutors);
+      prototypes.put(key, prototype);
+    }
+    return prototype;
+  }
+
+  /**
+   * Builds the parts of a LaunchPod command that are the same for all agents of this template.
+   *
+   * @param jenkinsUrl the URL of the jenkins master.
+   * @param role The Mesos role for the task.
+   * @param numExecutors The number of executors of the agent.
+   * @return a prototype for LaunchPod commands.
+   * @throws MalformedURLException If a fetch URL is not well formed.
+   * @throws URISyntaxException IF the fetch URL cannot be converted into a proper URI.
+   */
+  LaunchPrototype buildLaunchPrototype(URL jenkinsUrl, String role, int numExecutors)
+      throws MalformedURLException, URISyntaxException {
     List<FetchUri> fetchUris =
         additionalURIs.stream()
             .map(
@@ -148,10 +219,9 @@ public class MesosAgentSpecTemplate extends AbstractDescribableImpl<MesosAgentSp
             .collect(Collectors.toList());
 
     return new LaunchCommandBuilder()
-        .withCpu(this.getCpus())
-        .withMemory(this.getMem())
-        .withDisk(this.getDisk())
-        .withName(name)
+        .withCpu(this.getCpus() * numExecutors)
+        .withMemory(this.getMem() * numExecutors)
+        .withDisk(this.getDisk() * numExecutors)
         .withRole(role)
         .withJenkinsUrl(jenkinsUrl)
         .withContainerInfo(Optional.ofNullable(this.getContainerInfo()))
@@ -161,7 +231,15 @@ public class MesosAgentSpecTemplate extends AbstractDescribableImpl<MesosAgentSp
         .withAgentAttribute(this.getAgentAttributes())
         .withAgentCommandStyle(Optional.ofNullable(this.agentCommandStyle))
         .withAdditionalFetchUris(fetchUris)
-        .build();
+        .buildPrototype();
+  }
+
+  private synchronized Map<String, LaunchPrototype> getLaunchPrototypes() {
+    // Transient fields are not restored by XStream so we initialize the cache lazily.
+    if (this.launchPrototypes == null) {
+      this.launchPrototypes = new ConcurrentHashMap<>();
+    }
+    return this.launchPrototypes;
   }
 
   public String getLabel() {
@@ -186,7 +264,30 @@ public class MesosAgentSpecTemplate extends AbstractDescribableImpl<MesosAgentSp
    * @return A new unique name for an agent.
    */
   public String generateName() {
-    return String.format("jenkins-agent-%s-%s", this.label, UUID.randomUUID().toString());
+    return String.format("%s%s", getNamePrefix(), UUID.randomUUID().toString());
+  }
+
+  /**
+   * Checks whether an agent name was generated by {@link #generateName()} of this template.
+   *
+   * @param name The name of the agent, ie the pod id.
+   * @return true if the name consists of the prefix of this template and a random UUID.
+   */
+  public boolean isGeneratedName(String name) {
+    final String prefix = getNamePrefix();
+    if (!name.startsWith(prefix) || name.length() != prefix.length() + UUID_LENGTH) {
+      return false;
+    }
+    try {
+      UUID.fromString(name.substring(prefix.length()));
+      return true;
+    } catch (IllegalArgumentException ex) {
+      return false;
+    }
+  }
+
+  private String getNamePrefix() {
+    return String.format("jenkins-agent-%s-", this.label);
   }
 
   public double getCpus() {
@@ -241,6 +342,55 @@ public class MesosAgentSpecTemplate extends AbstractDescribableImpl<MesosAgentSp
     return this.domainFilterModel;
   }
 
+  /** @return the number of idle agents that should be kept online for this template. */
+  public int getMinIdle() {
+    return this.minIdle;
+  }
+
+  @DataBoundSetter
+  public void setMinIdle(int minIdle) {
+    this.minIdle = Math.max(0, minIdle);
+  }
+
+  /**
+   * @return the maximum number of idle agents of this template. Surplus idle agents are terminated.
+   *     Zero means no limit.
+   */
+  public int getMaxIdle() {
+    return this.maxIdle;
+  }
+
+  @DataBoundSetter
+  public void setMaxIdle(int maxIdle) {
+    this.maxIdle = Math.max(0, maxIdle);
+  }
+
+  /**
+   * @return the seconds a launch may wait for a matching offer before it is re-routed. Zero means
+   *     the launch waits until the agent timeout.
+   */
+  public int getOfferMatchDeadlineSeconds() {
+    return this.offerMatchDeadlineSeconds;
+  }
+
+  @DataBoundSetter
+  public void setOfferMatchDeadlineSeconds(int offerMatchDeadlineSeconds) {
+    this.offerMatchDeadlineSeconds = Math.max(0, offerMatchDeadlineSeconds);
+  }
+
+  /**
+   * @return the label expression of the template that takes over a launch that missed its offer
+   *     match deadline if no other cloud serves this template's labels. Empty means no fallback.
+   */
+  public String getFallbackLabel() {
+    return StringUtils.defaultString(this.fallbackLabel);
+  }
+
+  @DataBoundSetter
+  public void setFallbackLabel(String fallbackLabel) {
+    this.fallbackLabel = StringUtils.isNotBlank(fallbackLabel) ? fallbackLabel.trim() : "";
+  }
+
   public static class ContainerInfo extends AbstractDescribableImpl<ContainerInfo> {
 
     private final String type;
@@ -1,7 +1,15 @@
 package org.jenkinsci.plugins.mesos;
 
 import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.http.scaladsl.model.headers.HttpCredentials;
+import akka.japi.Pair;
 import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
 import akka.stream.QueueOfferResult;
 import akka.stream.javadsl.*;
 import com.mesosphere.mesos.MasterDetector$;
@@ -13,99 +21,222 @@ import com.mesosphere.usi.core.models.*;
 import com.mesosphere.usi.core.models.commands.KillPod;
 import com.mesosphere.usi.core.models.commands.LaunchPod;
 import com.mesosphere.usi.core.models.commands.SchedulerCommand;
-import com.mesosphere.usi.repository.PodRecordRepository;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import com.typesafe.config.ConfigValueFactory;
+import hudson.Util;
+import hudson.model.Computer;
 import hudson.model.Descriptor.FormException;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nonnull;
 import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
 import org.apache.mesos.v1.Protos;
 import org.jenkinsci.plugins.mesos.MesosCloud.DcosAuthorization;
+import org.jenkinsci.plugins.mesos.api.LaunchPrototype;
+import org.jenkinsci.plugins.mesos.api.OfferSuppressor;
 import org.jenkinsci.plugins.mesos.api.Session;
 import org.jenkinsci.plugins.mesos.api.Settings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import scala.compat.java8.FutureConverters;
 import scala.concurrent.ExecutionContext;
 
 /**
  * Provides a simplified interface to Mesos through USI.
  *
  * <p>Each connection should be a singleton. New instance are create via {@link
- * MesosApi#getInstance(String, URL, String, String, String, String, Optional, Optional)}.
+ * MesosApi#getInstanceAsync(MesosCloud)}.
  */
 public class MesosApi {
 
   private static final Logger logger = LoggerFactory.getLogger(MesosApi.class);
 
-  static HashMap<String, MesosApi> sessions = new HashMap<>();
+  // Connections by framework id. A connection that failed to initialize is removed so that the
+  // next call retries.
+  static final ConcurrentHashMap<String, CompletableFuture<MesosApi>> sessions =
+      new ConcurrentHashMap<>();
+
+  // Actor systems shared by all connections with the same SSL certificate. The Mesos client picks
+  // up its trust store from the actor system config. A system is terminated once its last
+  // connection is closed.
+  private static final Map<Optional<String>, ActorSystem> actorSystems = new HashMap<>();
+  private static final Map<Optional<String>, Integer> actorSystemUsers = new HashMap<>();
+
+  // The time a closing connection waits for queued commands to be passed to USI.
+  private static final Duration CLOSE_DRAIN_TIMEOUT = Duration.ofSeconds(5);
+
+  // The time a stale connection waits for the kills of its agents before it is closed.
+  private static final Duration KILL_ALL_TIMEOUT = Duration.ofSeconds(30);
+
+  // How often the demand for offers is checked.
+  private static final Duration OFFER_DEMAND_INTERVAL = Duration.ofSeconds(5);
+
+  private static final int OPERATOR_API_TIMEOUT_MILLIS = 10000;
+
+  private static final String SSL_TRUST_STORE_CONFIG =
+      "akka.ssl-config.trustManager.stores = [{ type: \"PEM\", data: ${cert.pem} }]";
 
   /**
-   * Fetching an existing connection or constructs a new one.
+   * Fetching an existing connection or constructs a new one and waits until it is initialized.
    *
-   * <p>This is modelled after the <code>KubernetesClientProvider</code> of the Kubernetes plugin.
+   * @see MesosApi#getInstanceAsync(MesosCloud)
    */
-  public static synchronized MesosApi getInstance(MesosCloud cloud)
+  public static MesosApi getInstance(MesosCloud cloud)
       throws InterruptedException, ExecutionException {
+    return getInstanceAsync(cloud).toCompletableFuture().get();
+  }
+
+  /**
+   * Looks up an initialized connection without constructing one.
+   *
+   * @param frameworkId The framework id of the connection.
+   * @return the connection or empty if it is not initialized or failed to initialize.
+   */
+  static Optional<MesosApi> findInstance(String frameworkId) {
+    final CompletableFuture<MesosApi> session = sessions.get(frameworkId);
+    if (session == null || !session.isDone() || session.isCompletedExceptionally()) {
+      return Optional.empty();
+    }
+    return Optional.of(session.join());
+  }
+
+  /**
+   * Fetching an existing connection or constructs a new one in the background.
+   *
+   * <p>This is modelled after the <code>KubernetesClientProvider</code> of the Kubernetes plugin.
+   * Each framework is initialized independently so that an unreachable Mesos master only stalls its
+   * own cloud.
+   *
+   * @param cloud The cloud whose framework the connection is for.
+   * @return the connection once it is initialized.
+   */
+  public static CompletionStage<MesosApi> getInstanceAsync(MesosCloud cloud) {
     final URL jenkinsURL;
     try {
       jenkinsURL = new URL(cloud.getJenkinsURL());
     } catch (MalformedURLException ex) {
-      throw new ExecutionException("Could not parse Jenkins URL", ex);
+      final CompletableFuture<MesosApi> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new ExecutionException("Could not parse Jenkins URL", ex));
+      return failed;
     }
-    return getInstance(
-        cloud.getMesosMasterUrl(),
-        jenkinsURL,
-        cloud.getAgentUser(),
-        cloud.getFrameworkName(),
-        cloud.getFrameworkId(),
-        cloud.getRole(),
-        cloud.getSslCert(),
-        cloud.getAuthorization());
-  }
-
-  private static synchronized MesosApi getInstance(
-      String master,
-      URL jenkinsUrl,
-      String agentUser,
-      String frameworkName,
-      String frameworkId,
-      String role,
-      Optional<String> sslCert,
-      Optional<DcosAuthorization> authorization)
-      throws ExecutionException, InterruptedException {
-    if (!sessions.containsKey(frameworkId)) {
-      final MesosApi session =
-          new MesosApi(
-              master,
-              jenkinsUrl,
-              agentUser,
-              frameworkName,
-              frameworkId,
-              role,
-              sslCert,
-              authorization);
-      logger.info("Initialized Mesos API object for framework {}", frameworkId);
-      sessions.put(frameworkId, session);
-      return session;
-    } else {
-      // Override Jenkins URL and agent user if they changed.
-      MesosApi session = sessions.get(frameworkId);
-      logger.debug("Fetched Mesos API object for framework {}", frameworkId);
+    final String frameworkId = cloud.getFrameworkId();
+    final CompletableFuture<MesosApi> future =
+        sessions.computeIfAbsent(
+            frameworkId,
+            id ->
+                CompletableFuture.supplyAsync(
+                    () -> {
+                      try {
+                        final MesosApi session =
+                            new MesosApi(
+                                cloud.getMesosMasterUrl(),
+                                jenkinsURL,
+                                cloud.getAgentUser(),
+                                cloud.getFrameworkName(),
+                                id,
+                                cloud.getRole(),
+                                cloud.getSslCert(),
+                                cloud.getAuthorization());
+                        logger.info("Initialized Mesos API object for framework {}", id);
+                        return session;
+                      } catch (Exception ex) {
+                        throw new CompletionException(ex);
+                      }
+                    },
+                    Computer.threadPoolForRemoting));
+
+    return future.handle(
+        (session, ex) -> {
+          if (ex != null) {
+            logger.warn("Could not initialize Mesos API object for framework {}", frameworkId, ex);
+            sessions.remove(frameworkId, future);
+            throw (ex instanceof CompletionException)
+                ? (CompletionException) ex
+                : new CompletionException(ex);
+          }
+          // Override Jenkins URL and agent user if they changed.
+          logger.debug("Fetched Mesos API object for framework {}", frameworkId);
+          session.setJenkinsUrl(jenkinsURL);
+          session.setAgentUser(cloud.getAgentUser());
+          cloud.getDeclineOfferDuration().ifPresent(session.getOfferSuppressor()::setMaxGrace);
+          return session;
+        });
+  }
+
+  /**
+   * Closes the connections of all frameworks that no configured cloud uses anymore.
+   *
+   * <p>No other connection would adopt the Mesos tasks of such a framework. Its agents are
+   * therefore killed and removed from Jenkins before the connection is closed.
+   *
+   * @param frameworkIds The framework ids of all configured Mesos clouds.
+   * @return a future that completes once the stale connections are closed.
+   */
+  public static CompletableFuture<Void> closeStaleInstances(Set<String> frameworkIds) {
+    final List<CompletableFuture<Void>> closed = new ArrayList<>();
+    for (String frameworkId : sessions.keySet()) {
+      if (!frameworkIds.contains(frameworkId)) {
+        closed.add(closeInstance(frameworkId, true));
+      }
+    }
+    return CompletableFuture.allOf(closed.toArray(new CompletableFuture[0]));
+  }
 
-      session.setJenkinsUrl(jenkinsUrl);
-      session.setAgentUser(agentUser);
-      return session;
+  /**
+   * Closes the connections of all frameworks when Jenkins shuts down. The agents keep running so
+   * that they are adopted after the restart.
+   *
+   * @return a future that completes once all connections are closed.
+   */
+  public static CompletableFuture<Void> closeAllInstances() {
+    final List<CompletableFuture<Void>> closed = new ArrayList<>();
+    for (String frameworkId : sessions.keySet()) {
+      closed.add(closeInstance(frameworkId, false));
     }
+    return CompletableFuture.allOf(closed.toArray(new CompletableFuture[0]));
+  }
+
+  /**
+   * Removes the connection of a framework from the registry and closes it in the background.
+   *
+   * @param frameworkId The id of the framework.
+   * @param killAgents Whether the agents of the framework are killed before it is closed.
+   * @return a future that completes once the connection is closed.
+   */
+  static CompletableFuture<Void> closeInstance(String frameworkId, boolean killAgents) {
+    final CompletableFuture<MesosApi> session = sessions.remove(frameworkId);
+    if (session == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    logger.info("Closing Mesos API object for framework {}", frameworkId);
+    // A connection that failed to initialize has nothing to close.
+    return session
+        .exceptionally(ex -> null)
+        .thenComposeAsync(
+            api -> {
+              if (api == null) {
+                return CompletableFuture.completedFuture(null);
+              }
+              final CompletableFuture<Void> killed =
+                  killAgents ? api.killAllAgents() : CompletableFuture.completedFuture(null);
+              return killed.thenRunAsync(api::close, Computer.threadPoolForRemoting);
+            },
+            Computer.threadPoolForRemoting);
   }
 
   private final Settings operationalSettings;
@@ -123,9 +254,20 @@ public class MesosApi {
 
   // Internal state.
   @Nonnull private final ConcurrentHashMap<PodId, MesosJenkinsAgent> stateMap;
-  @Nonnull private final PodRecordRepository repository;
+  @Nonnull private final MesosPodRecordRepository repository;
+  @Nonnull private final AgentGauges agentGauges;
+  @Nonnull private final OfferSuppressor offerSuppressor;
+  private final Optional<Cancellable> offerDemandCheck;
+  @Nonnull private final OfferDiagnostics offerDiagnostics = new OfferDiagnostics();
+  private final Optional<Cancellable> offerSampling;
+
+  @Nonnull private final URL masterUrl;
+  @Nonnull private final Optional<CredentialsProvider> credentialsProvider;
+
+  private final AtomicBoolean closed = new AtomicBoolean(false);
 
   // Actor system.
+  @Nonnull private final Optional<String> sslCert;
   @Nonnull private final ActorSystem system;
   @Nonnull private final ActorMaterializer materializer;
   @Nonnull private final ExecutionContext context;
@@ -165,77 +307,266 @@ public class MesosApi {
 
     // Load settings.
     final ClassLoader classLoader = Jenkins.get().pluginManager.uberClassLoader;
+    this.operationalSettings = Settings.load(classLoader);
 
-    @Nonnull Config conf;
-    if (sslCert.isPresent()) {
-      conf =
-          ConfigFactory.parseString(
-                  "akka.ssl-config.trustManager.stores = [{ type: \"PEM\", data: ${cert.pem} }]")
-              .withValue("cert.pem", ConfigValueFactory.fromAnyRef(sslCert.get()))
-              .resolve()
-              .withFallback(ConfigFactory.load(classLoader));
-    } else {
-      conf = ConfigFactory.load(classLoader);
+    // Run on the shared actor system with a materializer per framework.
+    this.sslCert = sslCert;
+    this.system = acquireActorSystem(sslCert, classLoader);
+    // Release the actor system if the connection fails to initialize since it is never closed.
+    MesosPodRecordRepository openedRepository = null;
+    try {
+      final String dispatcher = this.operationalSettings.getDispatcher();
+      ActorMaterializerSettings materializerSettings = ActorMaterializerSettings.create(system);
+      if (dispatcher.isEmpty()) {
+        this.context = system.dispatcher();
+      } else {
+        this.context = system.dispatchers().lookup(dispatcher);
+        materializerSettings = materializerSettings.withDispatcher(dispatcher);
+      }
+      this.materializer = ActorMaterializer.create(materializerSettings, system, "mesos-framework");
+
+      this.masterUrl =
+          MasterDetector$.MODULE$
+              .apply(master, Metrics.getInstance(frameworkName))
+              .getMaster(context)
+              .toCompletableFuture()
+              .get();
+
+      MesosClientSettings clientSettings =
+          MesosClientSettings.load(classLoader).withMasters(Collections.singletonList(masterUrl));
+      SchedulerSettings schedulerSettings = SchedulerSettings.load(classLoader);
+
+      // Initialize state.
+      this.stateMap = new ConcurrentHashMap<>();
+      this.agentGauges =
+          new AgentGauges(jenkins.metrics.api.Metrics.metricRegistry(), frameworkName);
+      final Path journalDirectory =
+          Jenkins.get().getRootDir().toPath().resolve("mesos").resolve(Util.rawEncode(frameworkId));
+      try {
+        this.repository = new MesosPodRecordRepository(journalDirectory);
+        openedRepository = this.repository;
+      } catch (IOException e) {
+        throw new RuntimeException("Could not open pod record journal " + journalDirectory, e);
+      }
+
+      // Inject metrics and credentials provider.
+      this.frameworkPrincipal = authorization.map(auth -> auth.getUid());
+      this.credentialsProvider =
+          authorization.map(
+              auth -> {
+                try {
+                  CredentialsProvider p =
+                      new DcosServiceAccountProvider(
+                          auth.getUid(),
+                          auth.getSecret(),
+                          new URL("https://master.mesos"), // TODO: do not hardcode DC/OS URL.
+                          this.system,
+                          this.materializer,
+                          this.context);
+                  return p;
+                } catch (MalformedURLException e) {
+                  throw new RuntimeException("DC/OS URL validation failed", e);
+                }
+              });
+
+      this.offerSuppressor =
+          new OfferSuppressor(
+              this.operationalSettings.getOfferSuppressionGrace(),
+              this.operationalSettings.getOfferSuppressionMaxGrace(),
+              jenkins.metrics.api.Metrics.metricRegistry(),
+              frameworkName);
+
+      // Initialize scheduler flow.
+      logger.info("Starting USI scheduler flow.");
+      this.session =
+          Session.create(
+              buildFrameworkInfo(),
+              clientSettings,
+              credentialsProvider,
+              schedulerSettings,
+              repository,
+              this.operationalSettings,
+              this.offerSuppressor,
+              this::updateState,
+              null,
+              context,
+              system,
+              materializer);
+
+      this.agentTimeout = this.operationalSettings.getAgentTimeout();
+
+      // Suppress offers while no agent is pending.
+      if (this.operationalSettings.isSuppressOffers()) {
+        this.offerDemandCheck =
+            Optional.of(
+                system
+                    .scheduler()
+                    .scheduleWithFixedDelay(
+                        OFFER_DEMAND_INTERVAL,
+                        OFFER_DEMAND_INTERVAL,
+                        () ->
+                            this.offerSuppressor.update(
+                                this.agentGauges.getTotal(AgentGauges.State.PENDING)),
+                        context));
+      } else {
+        this.offerDemandCheck = Optional.empty();
+      }
+
+      // Explain why agents do not get offers.
+      final Duration sampleInterval = this.operationalSettings.getOfferDiagnosticsInterval();
+      if (!sampleInterval.isZero()) {
+        this.offerSampling =
+            Optional.of(
+                system
+                    .scheduler()
+                    .scheduleWithFixedDelay(
+                        sampleInterval,
+                        sampleInterval,
+                        () -> sampleAgents(sampleInterval),
+                        context));
+      } else {
+        this.offerSampling = Optional.empty();
+      }
+    } catch (InterruptedException | ExecutionException | RuntimeException ex) {
+      if (openedRepository != null) {
+        try {
+          openedRepository.close();
+        } catch (IOException closeEx) {
+          ex.addSuppressed(closeEx);
+        }
+      }
+      releaseActorSystem(sslCert);
+      throw ex;
     }
+  }
 
-    // Create actor system.
-    this.system = ActorSystem.create("mesos-scheduler", conf, classLoader);
-    this.materializer = ActorMaterializer.create(system);
-    this.context = system.dispatcher();
-
-    URL masterUrl =
-        MasterDetector$.MODULE$
-            .apply(master, Metrics.getInstance(frameworkName))
-            .getMaster(context)
-            .toCompletableFuture()
-            .get();
-
-    MesosClientSettings clientSettings =
-        MesosClientSettings.load(classLoader).withMasters(Collections.singletonList(masterUrl));
-    SchedulerSettings schedulerSettings = SchedulerSettings.load(classLoader);
-    this.operationalSettings = Settings.load(classLoader);
+  /**
+   * Closes the connection to Mesos. The command queue stops accepting commands and queued commands
+   * are passed to USI for a few seconds. Then the streams of the framework are shut down, the pod
+   * record journal is closed and the actor system is terminated if no other connection uses it.
+   *
+   * <p>The Mesos tasks of the framework keep running.
+   */
+  public void close() {
+    if (!this.closed.compareAndSet(false, true)) {
+      return;
+    }
+    this.offerDemandCheck.ifPresent(Cancellable::cancel);
+    this.offerSampling.ifPresent(Cancellable::cancel);
+    try {
+      this.session
+          .close()
+          .toCompletableFuture()
+          .get(CLOSE_DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException ex) {
+      logger.info("Dropping pending commands of framework {}", this.frameworkId);
+    } catch (ExecutionException ex) {
+      logger.warn("Scheduler flow of framework {} failed", this.frameworkId, ex);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    this.materializer.shutdown();
+    try {
+      this.repository.close();
+    } catch (IOException ex) {
+      logger.warn("Could not close pod record journal of framework {}", this.frameworkId, ex);
+    }
+    this.stateMap.clear();
+    this.agentGauges.close();
+    this.offerSuppressor.close();
+    this.session.getCommandQueue().close();
+    releaseActorSystem(this.sslCert);
+    logger.info("Closed Mesos API object for framework {}", this.frameworkId);
+  }
 
-    // Initialize state.
-    this.stateMap = new ConcurrentHashMap<>();
-    this.repository = new MesosPodRecordRepository();
-
-    // Inject metrics and credentials provider.
-    this.frameworkPrincipal = authorization.map(auth -> auth.getUid());
-    Optional<CredentialsProvider> credentialsProvider =
-        authorization.map(
-            auth -> {
-              try {
-                CredentialsProvider p =
-                    new DcosServiceAccountProvider(
-                        auth.getUid(),
-                        auth.getSecret(),
-                        new URL("https://master.mesos"), // TODO: do not hardcode DC/OS URL.
-                        this.system,
-                        this.materializer,
-                        this.context);
-                return p;
-              } catch (MalformedURLException e) {
-                throw new RuntimeException("DC/OS URL validation failed", e);
+  /**
+   * Kills all agents of this framework and removes their Jenkins nodes.
+   *
+   * <p>Java 8 has no {@code CompletableFuture#orTimeout} so the actor system's scheduler completes
+   * the result after {@link #KILL_ALL_TIMEOUT} if not all kills were confirmed by then.
+   *
+   * @return a future that completes once each agent is terminal or after the timeout.
+   */
+  CompletableFuture<Void> killAllAgents() {
+    final List<MesosJenkinsAgent> agents = new ArrayList<>(this.stateMap.values());
+    for (MesosJenkinsAgent agent : agents) {
+      try {
+        agent.terminate();
+      } catch (IOException ex) {
+        logger.warn("Could not terminate agent {}", agent.getPodId(), ex);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    final CompletableFuture<Void> terminal =
+        CompletableFuture.allOf(
+            agents.stream().map(MesosJenkinsAgent::whenTerminal).toArray(CompletableFuture[]::new));
+    system
+        .scheduler()
+        .scheduleOnce(
+            KILL_ALL_TIMEOUT,
+            () -> {
+              if (terminal.complete(null)) {
+                agents.stream()
+                    .filter(agent -> !agent.whenTerminal().isDone())
+                    .forEach(
+                        agent ->
+                            logger.warn(
+                                "Kill of agent {} of framework {} was not confirmed",
+                                agent.getPodId(),
+                                this.frameworkId));
               }
-            });
+            },
+            context);
+    return terminal;
+  }
+
+  /**
+   * Fetches or creates the actor system shared by all connections that trust the same SSL
+   * certificate.
+   *
+   * @param sslCert An optional custom SSL certificate to secure the connection to Mesos.
+   * @param classLoader The class loader of the plugin.
+   * @return the shared actor system.
+   */
+  private static synchronized ActorSystem acquireActorSystem(
+      Optional<String> sslCert, ClassLoader classLoader) {
+    actorSystemUsers.merge(sslCert, 1, Integer::sum);
+    return actorSystems.computeIfAbsent(
+        sslCert,
+        cert -> {
+          final Config conf;
+          if (cert.isPresent()) {
+            conf =
+                ConfigFactory.parseString(SSL_TRUST_STORE_CONFIG)
+                    .withValue("cert.pem", ConfigValueFactory.fromAnyRef(cert.get()))
+                    .resolve()
+                    .withFallback(ConfigFactory.load(classLoader));
+          } else {
+            conf = ConfigFactory.load(classLoader);
+          }
+          logger.info("Creating actor system for Mesos connections");
+          return ActorSystem.create("mesos-scheduler", conf, classLoader);
+        });
+  }
 
-    // Initialize scheduler flow.
-    logger.info("Starting USI scheduler flow.");
-    this.session =
-        Session.create(
-            buildFrameworkInfo(),
-            clientSettings,
-            credentialsProvider,
-            schedulerSettings,
-            repository,
-            this.operationalSettings,
-            this::updateState,
-            null,
-            context,
-            system,
-            materializer);
-
-    this.agentTimeout = this.operationalSettings.getAgentTimeout();
+  /**
+   * Terminates the shared actor system once its last connection is closed.
+   *
+   * @param sslCert The SSL certificate the actor system was acquired for.
+   */
+  private static synchronized void releaseActorSystem(Optional<String> sslCert) {
+    final Integer users = actorSystemUsers.computeIfPresent(sslCert, (cert, count) -> count - 1);
+    if (users != null && users <= 0) {
+      actorSystemUsers.remove(sslCert);
+      final ActorSystem system = actorSystems.remove(sslCert);
+      if (system != null) {
+        logger.info("Terminating actor system for Mesos connections");
+        system.terminate();
+      }
+    }
   }
 
   private Protos.FrameworkInfo buildFrameworkInfo() {
@@ -281,9 +612,13 @@ public class MesosApi {
    */
   public CompletionStage<Void> killAgent(PodId podId) {
     logger.info("Kill agent {}.", podId.value());
+    final MesosJenkinsAgent agent = stateMap.get(podId);
+    if (agent != null) {
+      AgentTimeline.record(podId.value(), AgentTimeline.Type.KILL, "Kill requested");
+      releaseUnlaunched(agent);
+    }
     SchedulerCommand command = new KillPod(podId);
     return this.session
-        .getCommands()
         .offer(command)
         .thenAccept(
             result -> {
@@ -310,43 +645,156 @@ public class MesosApi {
    */
   public CompletionStage<MesosJenkinsAgent> enqueueAgent(String name, MesosAgentSpecTemplate spec)
       throws IOException, FormException, URISyntaxException {
+    return enqueueAgent(name, spec, 1);
+  }
 
-    MesosJenkinsAgent mesosJenkinsAgent =
-        new MesosJenkinsAgent(
-            this,
-            name,
-            spec,
-            "Mesos Jenkins Slave",
-            jenkinsUrl,
-            spec.getIdleTerminationMinutes(),
-            spec.getReusable(),
-            Collections.emptyList(),
-            this.agentTimeout);
-    LaunchPod launchCommand = spec.buildLaunchCommand(jenkinsUrl, name, this.role);
+  /**
+   * Enqueue launch command for a new Jenkins agent with multiple executors. The resources of the
+   * spec are reserved per executor.
+   *
+   * @return a {@link MesosJenkinsAgent} once it's queued for running.
+   */
+  public CompletionStage<MesosJenkinsAgent> enqueueAgent(
+      String name, MesosAgentSpecTemplate spec, int numExecutors)
+      throws IOException, FormException, URISyntaxException {
+
+    MesosJenkinsAgent mesosJenkinsAgent = newAgent(name, spec, numExecutors);
+    LaunchPrototype prototype = spec.getLaunchPrototype(jenkinsUrl, this.role, numExecutors);
+    LaunchPod launchCommand = prototype.newLaunchCommand(name);
 
     stateMap.put(launchCommand.podId(), mesosJenkinsAgent);
+    offerDiagnostics.register(launchCommand.podId(), mesosJenkinsAgent.getLabelString(), prototype);
+    mesosJenkinsAgent.markQueued();
+    this.offerSuppressor.update(1);
 
     // async add agent to queue
     return this.session
-        .getCommands()
         .offer(launchCommand)
-        .thenApply(
-            result -> {
-              if (result == QueueOfferResult.enqueued()) {
-                logger.info("Queued new agent {}", name);
-                return mesosJenkinsAgent;
-              } else if (result == QueueOfferResult.dropped()) {
-                logger.warn("USI command queue is full. Fail provisioning for {}", name);
-                throw new IllegalStateException(
-                    String.format("Launch command for %s was dropped.", name));
-              } else if (result instanceof QueueOfferResult.Failure) {
-                final Throwable ex = ((QueueOfferResult.Failure) result).cause();
-                throw new IllegalStateException("The USI stream failed or is closed.", ex);
-              } else {
-                throw new IllegalStateException(
-                    String.format("Unknown queue result %s", result.toString()));
-              }
-            });
+        .thenApply(result -> handleLaunchResult(launchCommand.podId(), mesosJenkinsAgent, result));
+  }
+
+  /**
+   * Enqueue launch commands for a batch of new Jenkins agents.
+   *
+   * <p>All launch commands are built and registered before they are offered to USI as one batch.
+   * The commands are still offered to the queue one by one, see {@link Session#offerAll(List)}. An
+   * agent whose launch command cannot be built fails its own future but does not affect the rest of
+   * the batch.
+   *
+   * @param agents Pairs of agent name and the {@link MesosAgentSpecTemplate} to launch.
+   * @return a {@link MesosJenkinsAgent} future per agent in the order of the passed agents.
+   */
+  public List<CompletionStage<MesosJenkinsAgent>> enqueueAgents(
+      List<Pair<String, MesosAgentSpecTemplate>> agents) {
+    return enqueueAgents(agents, Collections.nCopies(agents.size(), 1));
+  }
+
+  /**
+   * Enqueue launch commands for a batch of new Jenkins agents with multiple executors.
+   *
+   * @param agents Pairs of agent name and the {@link MesosAgentSpecTemplate} to launch.
+   * @param numExecutors The number of executors of each agent in the order of the passed agents.
+   * @return a {@link MesosJenkinsAgent} future per agent in the order of the passed agents.
+   * @see #enqueueAgents(List)
+   */
+  public List<CompletionStage<MesosJenkinsAgent>> enqueueAgents(
+      List<Pair<String, MesosAgentSpecTemplate>> agents, List<Integer> numExecutors) {
+    final List<CompletionStage<MesosJenkinsAgent>> results = new ArrayList<>(agents.size());
+    final Map<PodId, MesosJenkinsAgent> batchAgents = new LinkedHashMap<>();
+    final List<SchedulerCommand> batch = new ArrayList<>(agents.size());
+
+    for (int i = 0; i < agents.size(); i++) {
+      final String name = agents.get(i).first();
+      final MesosAgentSpecTemplate spec = agents.get(i).second();
+      final int executors = numExecutors.get(i);
+      try {
+        final MesosJenkinsAgent mesosJenkinsAgent = newAgent(name, spec, executors);
+        final LaunchPrototype prototype = spec.getLaunchPrototype(jenkinsUrl, this.role, executors);
+        final LaunchPod launchCommand = prototype.newLaunchCommand(name);
+        batchAgents.put(launchCommand.podId(), mesosJenkinsAgent);
+        offerDiagnostics.register(
+            launchCommand.podId(), mesosJenkinsAgent.getLabelString(), prototype);
+        batch.add(launchCommand);
+        results.add(null); // Placeholder for the queue result.
+      } catch (Exception ex) {
+        logger.warn("Could not build launch command for {}", name, ex);
+        final CompletableFuture<MesosJenkinsAgent> failed = new CompletableFuture<>();
+        failed.completeExceptionally(ex);
+        results.add(failed);
+      }
+    }
+
+    stateMap.putAll(batchAgents);
+    batchAgents.values().forEach(MesosJenkinsAgent::markQueued);
+    if (!batchAgents.isEmpty()) {
+      this.offerSuppressor.update(batchAgents.size());
+    }
+
+    // async add all agents to queue
+    final Iterator<CompletionStage<QueueOfferResult>> offers =
+        this.session.offerAll(batch).iterator();
+    final Iterator<Map.Entry<PodId, MesosJenkinsAgent>> queued = batchAgents.entrySet().iterator();
+    for (int i = 0; i < results.size(); i++) {
+      if (results.get(i) == null) {
+        final Map.Entry<PodId, MesosJenkinsAgent> agent = queued.next();
+        results.set(
+            i,
+            offers
+                .next()
+                .thenApply(result -> handleLaunchResult(agent.getKey(), agent.getValue(), result)));
+      }
+    }
+    logger.info("Queued batch of {} agents", batch.size());
+    return results;
+  }
+
+  /** @return a new {@link MesosJenkinsAgent} that is not launched yet. */
+  private MesosJenkinsAgent newAgent(String name, MesosAgentSpecTemplate spec, int numExecutors)
+      throws IOException, FormException {
+    return new MesosJenkinsAgent(
+        this,
+        name,
+        spec,
+        "Mesos Jenkins Slave",
+        jenkinsUrl,
+        spec.getIdleTerminationMinutes(),
+        spec.getReusable(),
+        Collections.emptyList(),
+        this.agentTimeout,
+        numExecutors);
+  }
+
+  /**
+   * Evaluates the result of offering a launch command to the USI command queue.
+   *
+   * @param podId The id of the pod that was offered.
+   * @param agent The agent the launch command belongs to.
+   * @param result The result of the queue offer.
+   * @return the agent if the launch command was enqueued.
+   * @throws IllegalStateException if the launch command was not enqueued.
+   */
+  private MesosJenkinsAgent handleLaunchResult(
+      PodId podId, MesosJenkinsAgent agent, QueueOfferResult result) {
+    if (result == QueueOfferResult.enqueued()) {
+      logger.info("Queued new agent {}", podId.value());
+      agent.getLaunchPhases().reached(LaunchPhases.Phase.QUEUED);
+      AgentTimeline.record(podId.value(), AgentTimeline.Type.QUEUED, "Launch command queued");
+      return agent;
+    }
+
+    // The agent will never be launched so we can forget it.
+    stateMap.remove(podId);
+    agent.markNotQueued();
+    if (result == QueueOfferResult.dropped()) {
+      logger.warn("USI command queue is full. Fail provisioning for {}", podId.value());
+      throw new IllegalStateException(
+          String.format("Launch command for %s was dropped.", podId.value()));
+    } else if (result instanceof QueueOfferResult.Failure) {
+      final Throwable ex = ((QueueOfferResult.Failure) result).cause();
+      throw new IllegalStateException("The USI stream failed or is closed.", ex);
+    } else {
+      throw new IllegalStateException(String.format("Unknown queue result %s", result.toString()));
+    }
   }
 
   public ActorMaterializer getMaterializer() {
@@ -359,23 +807,32 @@ public class MesosApi {
    * <p>This method will filter out {@link PodStatusUpdatedEvent} and pass them on to their {@link
    * MesosJenkinsAgent}. It should be threadsafe.
    *
+   * <p>The launch phases of an agent are recorded from its status updates. A {@link
+   * PodRecordUpdatedEvent} marks that USI matched an offer and launched the pod.
+   *
    * @param event The {@link PodStatusUpdatedEvent} for a USI pod.
    */
   private void updateState(StateEventOrSnapshot event) {
-    if (event instanceof PodStatusUpdatedEvent) {
+    if (event instanceof PodRecordUpdatedEvent) {
+      PodRecordUpdatedEvent podRecordEvent = (PodRecordUpdatedEvent) event;
+      MesosJenkinsAgent launched = stateMap.get(podRecordEvent.id());
+      if (launched != null && podRecordEvent.newRecord().isDefined()) {
+        launched.getLaunchPhases().reached(LaunchPhases.Phase.OFFER_MATCHED);
+      }
+    } else if (event instanceof PodStatusUpdatedEvent) {
       PodStatusUpdatedEvent podStateEvent = (PodStatusUpdatedEvent) event;
-      logger.info("Got status update for pod {}", podStateEvent.id().value());
-      MesosJenkinsAgent updated =
-          stateMap.computeIfPresent(
-              podStateEvent.id(),
-              (id, agent) -> {
-                agent.update(podStateEvent);
-                return agent;
-              });
+      logger.debug("Got status update for pod {}", podStateEvent.id().value());
+      // Events of one pod are handled in order by the same worker so the agent is updated outside
+      // of the map lock.
+      MesosJenkinsAgent updated = stateMap.get(podStateEvent.id());
+      if (updated != null) {
+        updated.update(podStateEvent);
+        updated.getLaunchPhases().reached(updated.getStatus().getState());
+      }
 
-      // The agent, ie the pod, is not terminal and unknown to us. Kill it.
+      // The agent, ie the pod, is not terminal and unknown to us. Adopt or kill it.
       boolean terminal = podStateEvent.newStatus().forall(PodStatus::isTerminalOrUnreachable);
-      if (updated == null && !terminal) {
+      if (updated == null && !terminal && !adoptAgent(podStateEvent)) {
         killAgent(podStateEvent.id());
       }
       if (terminal) {
@@ -384,6 +841,192 @@ public class MesosApi {
     }
   }
 
+  /**
+   * Re-registers a running pod that is unknown to the state map as a Jenkins node.
+   *
+   * <p>This happens after a Jenkins restart when USI reports the pods that kept running. A pod is
+   * only adopted if its id was generated by an agent spec of a Mesos cloud with the same framework
+   * id. The Jenkins agent of an adopted pod can simply reconnect.
+   *
+   * @param event The status update of the unknown pod.
+   * @return true if the pod was adopted, false if the pod is foreign and should be killed.
+   */
+  private boolean adoptAgent(PodStatusUpdatedEvent event) {
+    if (!this.operationalSettings.isAdoptRunningAgents()) {
+      return false;
+    }
+
+    final String name = event.id().value();
+    final Optional<MesosAgentSpecTemplate> spec = findSpecForPod(name);
+    if (!spec.isPresent()) {
+      logger.info("Pod {} matches no agent spec of framework {}", name, this.frameworkId);
+      return false;
+    }
+
+    try {
+      // The executor count of the pod is unknown. The agent gets the minimum of its spec.
+      final MesosJenkinsAgent agent =
+          newAgent(name, spec.get(), Math.max(1, spec.get().getMinExecutors()));
+      // The launch of an adopted agent was not observed.
+      agent.getLaunchPhases().skip();
+      final MesosJenkinsAgent known = stateMap.putIfAbsent(event.id(), agent);
+      if (known != null) {
+        // Another status update adopted the pod in the meantime.
+        known.update(event);
+        return true;
+      }
+      agent.update(event);
+      Jenkins.get().addNode(agent);
+      jenkins.metrics.api.Metrics.metricRegistry().meter("mesos.agent.adopted").mark();
+      logger.info("Adopted running pod {} as Jenkins node", name);
+      return true;
+    } catch (IOException | FormException ex) {
+      logger.warn("Could not adopt running pod {}", name, ex);
+      stateMap.remove(event.id());
+      return false;
+    }
+  }
+
+  /**
+   * Finds the agent spec that generated the passed pod id.
+   *
+   * @param podId The id of a pod launched by this framework.
+   * @return the matching {@link MesosAgentSpecTemplate} or empty optional.
+   */
+  private Optional<MesosAgentSpecTemplate> findSpecForPod(String podId) {
+    for (MesosCloud cloud : Jenkins.get().clouds.getAll(MesosCloud.class)) {
+      if (!this.frameworkId.equals(cloud.getFrameworkId())) {
+        continue;
+      }
+      for (MesosAgentSpecTemplate spec : cloud.getMesosAgentSpecTemplates()) {
+        if (spec.isGeneratedName(podId)) {
+          return Optional.of(spec);
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Forgets an agent that is killed before USI matched an offer for it. USI never launched its pod
+   * and thus never reports a terminal status for it. The agent is counted as terminal and removed
+   * right away. Otherwise it would stay pending forever and offers would never be suppressed again.
+   *
+   * <p>All kills, eg on the agent timeout, on termination or at the offer match deadline, go
+   * through {@link #killAgent(PodId)} which calls this.
+   *
+   * @param agent The agent that is killed.
+   */
+  void releaseUnlaunched(MesosJenkinsAgent agent) {
+    if (agent.getLaunchPhases().isWaitingForOffer()
+        && stateMap.remove(new PodId(agent.getPodId()), agent)) {
+      agent.markTerminal();
+    }
+  }
+
+  /**
+   * Kills the agent if USI did not match an offer for its launch before the deadline. The agent's
+   * wait until online fails right away so that the workload can be re-routed. The agent is released
+   * by {@link #releaseUnlaunched(MesosJenkinsAgent)}.
+   *
+   * @param agent The queued agent.
+   * @param deadline The offer match deadline of the agent's template.
+   */
+  void enforceOfferMatchDeadline(MesosJenkinsAgent agent, Duration deadline) {
+    final PodId podId = new PodId(agent.getPodId());
+    system
+        .scheduler()
+        .scheduleOnce(
+            deadline,
+            () -> {
+              if (stateMap.get(podId) == agent && agent.getLaunchPhases().isWaitingForOffer()) {
+                logger.info("No offer matched agent {} within {}", podId.value(), deadline);
+                LabelMetrics.forLabel(agent.getLabelString()).offerDeadlineExceeded().mark();
+                agent.abortOfferMatch(deadline);
+                killAgent(podId);
+              }
+            },
+            context);
+  }
+
+  /**
+   * Samples the Mesos agents from the master if an agent waits longer than the interval for an
+   * offer. The responses are parsed and diagnosed on the remoting thread pool so that the
+   * dispatcher is not kept busy by large clusters.
+   *
+   * @param interval The sampling interval.
+   */
+  private void sampleAgents(Duration interval) {
+    final boolean due =
+        this.offerDiagnostics.prune(
+            podId -> {
+              final MesosJenkinsAgent agent = stateMap.get(podId);
+              return agent != null && agent.getLaunchPhases().isWaitingForOffer();
+            },
+            interval);
+    if (!due) {
+      return;
+    }
+    callOperatorApi("GET_AGENTS")
+        .thenCombine(callOperatorApi("GET_MASTER"), Pair::create)
+        .thenAcceptAsync(
+            responses ->
+                this.offerDiagnostics.diagnose(
+                    AgentCapacity.parseAgents(JSONObject.fromObject(responses.first())),
+                    AgentCapacity.parseMasterDomain(JSONObject.fromObject(responses.second()))),
+            Computer.threadPoolForRemoting)
+        .whenComplete(
+            (done, ex) -> {
+              if (ex != null) {
+                logger.warn("Could not sample Mesos agents of framework {}", this.frameworkId, ex);
+              }
+            });
+  }
+
+  /**
+   * Calls the Mesos operator API of the master through the Akka HTTP client. The client trusts the
+   * custom SSL certificate of the actor system just like the Mesos client.
+   *
+   * @param type The call type, eg {@code GET_AGENTS}.
+   * @return the JSON response body.
+   */
+  private CompletionStage<String> callOperatorApi(String type) {
+    final CompletionStage<Optional<HttpCredentials>> credentials =
+        this.credentialsProvider
+            .map(
+                provider -> FutureConverters.toJava(provider.credentials()).thenApply(Optional::of))
+            .orElse(CompletableFuture.completedFuture(Optional.empty()));
+    return credentials
+        .thenCompose(
+            credential -> {
+              HttpRequest request =
+                  HttpRequest.POST(this.masterUrl.toString().replaceAll("/$", "") + "/api/v1")
+                      .withEntity(
+                          ContentTypes.APPLICATION_JSON, String.format("{\"type\":\"%s\"}", type))
+                      .addHeader(RawHeader.create("Accept", "application/json"));
+              if (credential.isPresent()) {
+                request =
+                    request.addHeader(
+                        RawHeader.create(
+                            "Authorization",
+                            credential.get().scheme() + " " + credential.get().token()));
+              }
+              return Http.get(this.system).singleRequest(request);
+            })
+        .thenCompose(
+            response -> {
+              if (response.status().intValue() != 200) {
+                response.discardEntityBytes(this.materializer);
+                throw new CompletionException(
+                    new IOException(
+                        String.format(
+                            "%s call returned status %d", type, response.status().intValue())));
+              }
+              return response.entity().toStrict(OPERATOR_API_TIMEOUT_MILLIS, this.materializer);
+            })
+        .thenApply(entity -> entity.getData().utf8String());
+  }
+
   // Setters
 
   public void setJenkinsUrl(URL jenkinsUrl) {
@@ -416,6 +1059,21 @@ public class MesosApi {
     return this.role;
   }
 
+  /** @return the per-label gauges of the agents of this framework. */
+  AgentGauges getAgentGauges() {
+    return this.agentGauges;
+  }
+
+  /** @return the suppressor of the offers of this framework. */
+  OfferSuppressor getOfferSuppressor() {
+    return this.offerSuppressor;
+  }
+
+  /** @return the diagnostics of the agents that wait for an offer. */
+  OfferDiagnostics getOfferDiagnostics() {
+    return this.offerDiagnostics;
+  }
+
   /** @return the current state map. */
   public Map<PodId, MesosJenkinsAgent> getState() {
     return Collections.unmodifiableMap(this.stateMap);
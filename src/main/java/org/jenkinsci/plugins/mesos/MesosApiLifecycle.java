@@ -0,0 +1,46 @@
+package org.jenkinsci.plugins.mesos;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import jenkins.model.Jenkins;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closes the {@link MesosApi} connections of frameworks that are not used by any configured {@link
+ * MesosCloud} after a configuration change and all connections when Jenkins shuts down. The agents
+ * of a stale framework are killed while the agents of all frameworks keep running on shutdown.
+ */
+@Extension
+public class MesosApiLifecycle extends SaveableListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(MesosApiLifecycle.class);
+
+  @Override
+  public void onChange(Saveable o, XmlFile file) {
+    if (o instanceof Jenkins) {
+      final Jenkins instance = (Jenkins) o;
+      final Set<String> frameworkIds =
+          instance.clouds.getAll(MesosCloud.class).stream()
+              .map(MesosCloud::getFrameworkId)
+              .collect(Collectors.toSet());
+      MesosApi.closeStaleInstances(frameworkIds);
+    }
+  }
+
+  /** Closes all connections when Jenkins shuts down. */
+  @Terminator
+  public static void closeAll() {
+    try {
+      MesosApi.closeAllInstances().get(1, TimeUnit.MINUTES);
+    } catch (Exception ex) {
+      logger.warn("Could not close all Mesos connections", ex);
+    }
+  }
+}
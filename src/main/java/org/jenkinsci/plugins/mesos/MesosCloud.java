@@ -1,7 +1,10 @@
 package org.jenkinsci.plugins.mesos;
 
+import static hudson.init.InitMilestone.JOB_LOADED;
 import static hudson.init.InitMilestone.PLUGINS_STARTED;
 
+import akka.japi.Pair;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.mesosphere.mesos.MasterDetector$;
 import hudson.Extension;
@@ -9,6 +12,7 @@ import hudson.Util;
 import hudson.init.Initializer;
 import hudson.logging.LogRecorder;
 import hudson.logging.LogRecorderManager;
+import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Descriptor.FormException;
 import hudson.model.Label;
@@ -18,6 +22,7 @@ import hudson.slaves.Cloud;
 import hudson.slaves.NodeProvisioner;
 import hudson.util.FormValidation;
 import hudson.util.FormValidation.Kind;
+import hudson.util.HttpResponses;
 import java.io.File;
 import java.io.IOException;
 import java.net.HttpURLConnection;
@@ -25,21 +30,28 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.logging.Level;
 import javax.annotation.CheckForNull;
 import jenkins.metrics.api.Metrics;
 import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.mesos.api.Settings;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.QueryParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,6 +82,15 @@ public class MesosCloud extends AbstractCloudImpl {
 
   private List<? extends MesosAgentSpecTemplate> mesosAgentSpecTemplates;
 
+  private transient Map<String, AtomicInteger> poolLaunches;
+
+  // Resolved templates by label expression. Saving the configuration creates a new cloud so the
+  // cache never outlives its templates.
+  private transient Map<String, Optional<MesosAgentSpecTemplate>> specsByLabel;
+  // The meters of the cache are resolved with it so that a lookup does not query the registry.
+  private transient Meter specForLabelHit;
+  private transient Meter specForLabelMiss;
+
   public static class DcosAuthorization {
 
     private String secret;
@@ -97,6 +118,8 @@ public class MesosCloud extends AbstractCloudImpl {
   private transient String cloudID;
   private transient boolean checkpoint;
   private transient boolean onDemandRegistration;
+  // The decline offer duration in milliseconds is used as the upper bound of the grace before
+  // offers are suppressed until the cloud is saved again. Zero uses the operational setting.
   private transient int declineOfferDuration;
   private transient List<MesosAgentSpecTemplate> slaveInfos;
 
@@ -190,30 +213,34 @@ public class MesosCloud extends AbstractCloudImpl {
    */
   @Override
   public Collection<NodeProvisioner.PlannedNode> provision(Label label, int excessWorkload) {
-    Metrics.metricRegistry()
-        .meter(getMetricName(label, "provision", "request"))
-        .mark(excessWorkload);
+    LabelMetrics.forLabel(getLabelText(label)).provisionRequest().mark(excessWorkload);
 
-    List<NodeProvisioner.PlannedNode> nodes = new ArrayList<>();
     final MesosAgentSpecTemplate spec =
         getSpecForLabel(label).get(); // TODO: handle case when optional is empty.
 
+    // Plan all agents up front so that they can be queued in one batch.
+    final List<String> agentNames = new ArrayList<>();
+    final List<Integer> agentExecutors = new ArrayList<>();
     while (excessWorkload > 0) {
-      try {
-        int minExecutors = spec.getMinExecutors();
-        int maxExecutors = spec.getMaxExecutors();
-        int numExecutors = Math.max(minExecutors, Math.min(excessWorkload, maxExecutors));
-        logger.info(
-            "Excess workload of {} provisioning new Jenkins agent on Mesos cluster with {} executors",
-            excessWorkload,
-            numExecutors);
-        final String agentName = spec.generateName();
-        nodes.add(
-            new NodeProvisioner.PlannedNode(agentName, startAgent(agentName, spec), numExecutors));
-        excessWorkload -= numExecutors;
-      } catch (Exception ex) {
-        logger.warn("could not create planned node", ex);
-      }
+      int minExecutors = spec.getMinExecutors();
+      int maxExecutors = spec.getMaxExecutors();
+      int numExecutors =
+          Math.max(1, Math.max(minExecutors, Math.min(excessWorkload, maxExecutors)));
+      logger.info(
+          "Excess workload of {} provisioning new Jenkins agent on Mesos cluster with {} executors",
+          excessWorkload,
+          numExecutors);
+      agentNames.add(spec.generateName());
+      agentExecutors.add(numExecutors);
+      excessWorkload -= numExecutors;
+    }
+
+    List<NodeProvisioner.PlannedNode> nodes = new ArrayList<>();
+    final List<CompletableFuture<Node>> futureNodes = startAgents(agentNames, agentExecutors, spec);
+    for (int i = 0; i < futureNodes.size(); i++) {
+      nodes.add(
+          new NodeProvisioner.PlannedNode(
+              agentNames.get(i), futureNodes.get(i), agentExecutors.get(i)));
     }
 
     logger.info("Done queuing {} nodes", nodes.size());
@@ -233,10 +260,27 @@ public class MesosCloud extends AbstractCloudImpl {
     return getSpecForLabel(label).isPresent();
   }
 
-  /** @return the {@link MesosAgentSpecTemplate} for passed label or empty optional. */
+  /**
+   * Jenkins calls this for every queued label on each provisioner tick so the result is memoized
+   * per label expression.
+   *
+   * @return the {@link MesosAgentSpecTemplate} for passed label or empty optional.
+   */
   private Optional<MesosAgentSpecTemplate> getSpecForLabel(Label label) {
     if (label == null) return Optional.empty();
 
+    final Map<String, Optional<MesosAgentSpecTemplate>> specs = getSpecsByLabel();
+    final Optional<MesosAgentSpecTemplate> cached = specs.get(label.getExpression());
+    if (cached != null) {
+      this.specForLabelHit.mark();
+      return cached;
+    }
+    this.specForLabelMiss.mark();
+    return specs.computeIfAbsent(label.getExpression(), expression -> findSpecForLabel(label));
+  }
+
+  /** @return the first {@link MesosAgentSpecTemplate} whose labels match the passed label. */
+  private Optional<MesosAgentSpecTemplate> findSpecForLabel(Label label) {
     for (MesosAgentSpecTemplate spec : this.mesosAgentSpecTemplates) {
       if (label.matches(spec.getLabelSet())) {
         return Optional.of(spec);
@@ -257,9 +301,262 @@ public class MesosCloud extends AbstractCloudImpl {
   public Future<Node> startAgent(String name, MesosAgentSpecTemplate spec)
       throws InterruptedException, ExecutionException, IOException, FormException,
           URISyntaxException {
-    final MesosApi mesosApi = MesosApi.getInstance(this);
-    return mesosApi
-        .enqueueAgent(name, spec)
+    return MesosApi.getInstanceAsync(this)
+        .thenCompose(
+            mesosApi -> {
+              try {
+                return waitUntilOnline(
+                    mesosApi, name, spec, mesosApi.enqueueAgent(name, spec), true);
+              } catch (Exception ex) {
+                throw new CompletionException(ex);
+              }
+            })
+        .toCompletableFuture();
+  }
+
+  /**
+   * Start a batch of Jenkins agent.jar on Mesos.
+   *
+   * <p>All agents share the same {@link MesosAgentSpecTemplate} and are queued with one interaction
+   * with the {@link MesosApi}.
+   *
+   * @param names Names of the Jenkins nodes and Mesos tasks.
+   * @param spec The {@link MesosAgentSpecTemplate} that was configured for the Jenkins nodes.
+   * @return Future references to the launched nodes in the order of the passed names.
+   */
+  public List<CompletableFuture<Node>> startAgents(
+      List<String> names, MesosAgentSpecTemplate spec) {
+    return startAgents(names, Collections.nCopies(names.size(), 1), spec);
+  }
+
+  /**
+   * Start a batch of Jenkins agent.jar with multiple executors on Mesos.
+   *
+   * <p>The resources of the {@link MesosAgentSpecTemplate} are reserved per executor.
+   *
+   * @param names Names of the Jenkins nodes and Mesos tasks.
+   * @param numExecutors The number of executors per agent in the order of the passed names.
+   * @param spec The {@link MesosAgentSpecTemplate} that was configured for the Jenkins nodes.
+   * @return Future references to the launched nodes in the order of the passed names.
+   */
+  public List<CompletableFuture<Node>> startAgents(
+      List<String> names, List<Integer> numExecutors, MesosAgentSpecTemplate spec) {
+    return startAgents(names, numExecutors, spec, true);
+  }
+
+  /**
+   * @param reroute Whether agents that miss the offer match deadline of the template are re-routed.
+   *     A re-routed launch is never re-routed again.
+   * @see #startAgents(List, List, MesosAgentSpecTemplate)
+   */
+  private List<CompletableFuture<Node>> startAgents(
+      List<String> names,
+      List<Integer> numExecutors,
+      MesosAgentSpecTemplate spec,
+      boolean reroute) {
+    final List<Pair<String, MesosAgentSpecTemplate>> agents = new ArrayList<>(names.size());
+    for (String name : names) {
+      agents.add(Pair.create(name, spec));
+    }
+
+    // The agents are queued once the connection to Mesos is initialized. This does not block the
+    // provisioning of other clouds.
+    final CompletableFuture<MesosApi> mesosApi =
+        MesosApi.getInstanceAsync(this).toCompletableFuture();
+    final CompletableFuture<List<CompletionStage<MesosJenkinsAgent>>> queued =
+        mesosApi.thenApply(api -> api.enqueueAgents(agents, numExecutors));
+    final List<CompletableFuture<Node>> futureNodes = new ArrayList<>(names.size());
+    for (int i = 0; i < names.size(); i++) {
+      final int index = i;
+      futureNodes.add(
+          mesosApi
+              .thenCombine(
+                  queued,
+                  (api, agentsQueued) ->
+                      waitUntilOnline(
+                          api, names.get(index), spec, agentsQueued.get(index), reroute))
+              .thenCompose(Function.identity()));
+    }
+    return futureNodes;
+  }
+
+  /**
+   * Keeps the warm pool of each {@link MesosAgentSpecTemplate} between its minimum and maximum of
+   * idle agents. This is called periodically by {@link MesosAgentPoolReconciler}.
+   *
+   * <p>Missing idle agents are launched in one batch. Agents that are still launching for the pool
+   * count as idle so that a slow launch does not trigger another one. Surplus idle agents are
+   * terminated, longest idle first.
+   */
+  public void reconcileAgentPools() {
+    for (MesosAgentSpecTemplate spec : this.mesosAgentSpecTemplates) {
+      if (spec.getMinIdle() == 0 && spec.getMaxIdle() == 0) {
+        continue;
+      }
+
+      final List<MesosComputer> idle = getIdleComputers(spec);
+      final AtomicInteger launching =
+          getPoolLaunches().computeIfAbsent(spec.getLabel(), label -> new AtomicInteger(0));
+      final int missing = spec.getMinIdle() - idle.size() - launching.get();
+      final int maxIdle = Math.max(spec.getMaxIdle(), spec.getMinIdle());
+
+      if (missing > 0) {
+        logger.info("Launching {} idle agents for label {}", missing, spec.getLabel());
+        final List<String> names = new ArrayList<>(missing);
+        for (int i = 0; i < missing; i++) {
+          names.add(spec.generateName());
+        }
+        launching.addAndGet(missing);
+        final List<Integer> executors =
+            Collections.nCopies(missing, Math.max(1, spec.getMinExecutors()));
+        for (CompletableFuture<Node> node : startAgents(names, executors, spec)) {
+          node.whenComplete(
+              (n, ex) -> {
+                launching.decrementAndGet();
+                if (ex != null) {
+                  logger.warn("Could not launch idle agent for label {}", spec.getLabel(), ex);
+                }
+              });
+        }
+      } else if (spec.getMaxIdle() > 0 && idle.size() > maxIdle) {
+        idle.sort(Comparator.comparingLong(MesosComputer::getIdleStartMilliseconds));
+        for (MesosComputer computer : idle.subList(0, idle.size() - maxIdle)) {
+          logger.info("Terminating surplus idle agent {}", computer.getPodId());
+          final MesosJenkinsAgent agent = computer.getNode();
+          try {
+            if (agent != null) {
+              agent.terminate();
+            }
+          } catch (IOException | InterruptedException ex) {
+            logger.warn("Could not terminate surplus idle agent {}", computer.getPodId(), ex);
+          }
+        }
+      }
+
+      LabelMetrics.forLabel(spec.getLabel()).poolIdle().update(idle.size());
+    }
+  }
+
+  /**
+   * Checks whether a computer is part of the warm pool of its {@link MesosAgentSpecTemplate} and
+   * should not be terminated for being idle.
+   *
+   * @param computer The idle computer.
+   * @return true if the template would drop below its minimum of idle agents without the computer.
+   */
+  public boolean isReservedForPool(MesosComputer computer) {
+    for (MesosAgentSpecTemplate spec : this.mesosAgentSpecTemplates) {
+      if (spec.getMinIdle() > 0 && spec.isGeneratedName(computer.getPodId())) {
+        return getIdleComputers(spec).size() <= spec.getMinIdle();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Resolves a Mesos cloud by its framework id. All Mesos clouds share the name {@code MesosCloud}
+   * so that {@code cloud/MesosCloud} only ever resolves the first one. The endpoints of each cloud
+   * are thus served at {@code cloud/MesosCloud/framework/<framework id>/}.
+   *
+   * @param frameworkId The framework id of the cloud.
+   * @return the cloud or null if no Mesos cloud has the framework id.
+   */
+  public MesosCloud getFramework(String frameworkId) {
+    for (MesosCloud cloud : Jenkins.get().clouds.getAll(MesosCloud.class)) {
+      if (cloud.getFrameworkId().equals(frameworkId)) {
+        return cloud;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Serves the lifecycle timelines of all tracked agents of this cloud as JSON object keyed by pod
+   * id at {@code cloud/MesosCloud/framework/<framework id>/timeline}.
+   *
+   * @return the timelines of this cloud's agents.
+   */
+  public HttpResponse doTimeline() {
+    Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+    final JSONObject json = new JSONObject();
+    for (String podId : AgentTimeline.getPodIds()) {
+      for (MesosAgentSpecTemplate spec : this.mesosAgentSpecTemplates) {
+        if (spec.isGeneratedName(podId)) {
+          AgentTimeline.get(podId).ifPresent(timeline -> json.put(podId, timeline.toJSON()));
+          break;
+        }
+      }
+    }
+    return HttpResponses.okJSON(json);
+  }
+
+  /**
+   * Serves why the agents of this cloud that wait for an offer do not get one as JSON object keyed
+   * by pod id at {@code cloud/MesosCloud/framework/<framework id>/offerDiagnostics}. The request
+   * does not connect to Mesos if the cloud is not connected yet.
+   *
+   * @return the last diagnosis of each waiting agent.
+   */
+  public HttpResponse doOfferDiagnostics() {
+    Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+    return HttpResponses.okJSON(
+        MesosApi.findInstance(this.frameworkId)
+            .map(api -> api.getOfferDiagnostics().toJSON())
+            .orElseGet(JSONObject::new));
+  }
+
+  /** @return all online computers of the template that are idle and accept tasks. */
+  private List<MesosComputer> getIdleComputers(MesosAgentSpecTemplate spec) {
+    final List<MesosComputer> idle = new ArrayList<>();
+    for (Node node : Jenkins.get().getNodes()) {
+      if (node instanceof MesosJenkinsAgent && spec.isGeneratedName(node.getNodeName())) {
+        final Computer computer = node.toComputer();
+        if (computer instanceof MesosComputer
+            && computer.isOnline()
+            && computer.isIdle()
+            && computer.isAcceptingTasks()) {
+          idle.add((MesosComputer) computer);
+        }
+      }
+    }
+    return idle;
+  }
+
+  /** @return the number of pool agents that are launching per label. */
+  private synchronized Map<String, AtomicInteger> getPoolLaunches() {
+    if (this.poolLaunches == null) {
+      this.poolLaunches = new ConcurrentHashMap<>();
+    }
+    return this.poolLaunches;
+  }
+
+  /** @return the memoized templates by label expression. Resolves the cache meters as well. */
+  private synchronized Map<String, Optional<MesosAgentSpecTemplate>> getSpecsByLabel() {
+    if (this.specsByLabel == null) {
+      this.specForLabelHit = Metrics.metricRegistry().meter("mesos.cloud.spec-for-label.hit");
+      this.specForLabelMiss = Metrics.metricRegistry().meter("mesos.cloud.spec-for-label.miss");
+      this.specsByLabel = new ConcurrentHashMap<>();
+    }
+    return this.specsByLabel;
+  }
+
+  /**
+   * Adds a queued agent to Jenkins and waits until it comes online.
+   *
+   * @param mesosApi The {@link MesosApi} the agent was queued with.
+   * @param name Name of the Jenkins node and Mesos task.
+   * @param spec The {@link MesosAgentSpecTemplate} that was configured for the Jenkins node.
+   * @param queuedAgent The future agent returned by the {@link MesosApi}.
+   * @param reroute Whether the workload is re-routed if the agent misses its offer match deadline.
+   * @return A future reference to the launched node.
+   */
+  private CompletableFuture<Node> waitUntilOnline(
+      MesosApi mesosApi,
+      String name,
+      MesosAgentSpecTemplate spec,
+      CompletionStage<MesosJenkinsAgent> queuedAgent,
+      boolean reroute) {
+    return queuedAgent
         .thenCompose(
             mesosAgent -> {
               try {
@@ -267,27 +564,51 @@ public class MesosCloud extends AbstractCloudImpl {
                 logger.info("waiting for node {} to come online...", mesosAgent.getNodeName());
 
                 Timer.Context provisionToReady =
-                    Metrics.metricRegistry()
-                        .timer(getMetricName(spec.getLabel(), "provision", "ready"))
-                        .time();
-
-                return mesosAgent
-                    .waitUntilOnlineAsync(mesosApi.getMaterializer())
-                    .thenApply(
-                        node -> {
-                          logger.info("Agent {} is online", name);
-                          provisionToReady.stop();
-
-                          return node;
+                    LabelMetrics.forLabel(spec.getLabel()).provisionReady().time();
+                if (spec.getOfferMatchDeadlineSeconds() > 0) {
+                  mesosApi.enforceOfferMatchDeadline(
+                      mesosAgent, Duration.ofSeconds(spec.getOfferMatchDeadlineSeconds()));
+                }
+
+                final CompletableFuture<Node> online =
+                    mesosAgent
+                        .waitUntilOnlineAsync(mesosApi.getMaterializer())
+                        .thenApply(
+                            node -> {
+                              logger.info("Agent {} is online", name);
+                              provisionToReady.stop();
+
+                              return node;
+                            })
+                        .exceptionally(
+                            e -> {
+                              logger.info("Agent {} failed to come online", name);
+                              provisionToReady.stop();
+
+                              mesosApi.killAgent(name);
+                              throw new CompletionException(e);
+                            });
+                if (!reroute) {
+                  return online;
+                }
+                return online
+                    .handle(
+                        (node, ex) -> {
+                          if (ex == null) {
+                            return CompletableFuture.completedFuture(node);
+                          }
+                          if (mesosAgent.isOfferMatchDeadlineExceeded()) {
+                            final Optional<CompletableFuture<Node>> rerouted =
+                                reroute(mesosAgent, spec);
+                            if (rerouted.isPresent()) {
+                              return rerouted.get();
+                            }
+                          }
+                          final CompletableFuture<Node> failed = new CompletableFuture<>();
+                          failed.completeExceptionally(ex);
+                          return failed;
                         })
-                    .exceptionally(
-                        e -> {
-                          logger.info("Agent {} failed to come online", name);
-                          provisionToReady.stop();
-
-                          mesosApi.killAgent(name);
-                          throw new CompletionException(e);
-                        });
+                    .thenCompose(Function.identity());
               } catch (Exception ex) {
                 throw new CompletionException(ex);
               }
@@ -295,6 +616,81 @@ public class MesosCloud extends AbstractCloudImpl {
         .toCompletableFuture();
   }
 
+  /**
+   * Launches a replacement for an agent that missed the offer match deadline of its template. A
+   * template of another Mesos cloud that has all labels of the passed labelled template is
+   * preferred. Else the template of the fallback label is used.
+   *
+   * @param agent The agent that missed its deadline. It is removed from Jenkins.
+   * @param spec The template of the agent.
+   * @return the replacement node or empty if no template can take over.
+   */
+  private Optional<CompletableFuture<Node>> reroute(
+      MesosJenkinsAgent agent, MesosAgentSpecTemplate spec) {
+    try {
+      Jenkins.get().removeNode(agent);
+    } catch (IOException ex) {
+      logger.warn("Could not remove agent {}", agent.getNodeName(), ex);
+    }
+
+    final List<MesosCloud> clouds = new ArrayList<>();
+    clouds.add(this);
+    for (MesosCloud cloud : Jenkins.get().clouds.getAll(MesosCloud.class)) {
+      if (cloud != this) {
+        clouds.add(cloud);
+      }
+    }
+
+    // Every template has all labels of an unlabelled template so it is not re-routed by labels.
+    if (!spec.getLabelSet().isEmpty()) {
+      for (MesosCloud cloud : clouds.subList(1, clouds.size())) {
+        for (MesosAgentSpecTemplate other : cloud.getMesosAgentSpecTemplates()) {
+          if (other.getLabelSet().containsAll(spec.getLabelSet())) {
+            return Optional.of(cloud.startRerouted(agent, spec, other));
+          }
+        }
+      }
+    }
+
+    if (!spec.getFallbackLabel().isEmpty()) {
+      final Label fallback = Jenkins.get().getLabel(spec.getFallbackLabel());
+      for (MesosCloud cloud : clouds) {
+        final Optional<MesosAgentSpecTemplate> other = cloud.getSpecForLabel(fallback);
+        if (other.isPresent() && other.get() != spec) {
+          return Optional.of(cloud.startRerouted(agent, spec, other.get()));
+        }
+      }
+    }
+
+    logger.info("No other template can take over agent {}", agent.getNodeName());
+    return Optional.empty();
+  }
+
+  /**
+   * Launches a re-routed agent on this cloud.
+   *
+   * @param agent The agent that missed its deadline.
+   * @param from The template of the agent.
+   * @param to The template of this cloud that takes over.
+   * @return the replacement node.
+   */
+  private CompletableFuture<Node> startRerouted(
+      MesosJenkinsAgent agent, MesosAgentSpecTemplate from, MesosAgentSpecTemplate to) {
+    final String name = to.generateName();
+    logger.info(
+        "Re-routing agent {} to {} of framework {}",
+        agent.getNodeName(),
+        name,
+        this.getFrameworkName());
+    LabelMetrics.forLabel(from.getLabel()).offerDeadlineRerouted().mark();
+    return startAgents(
+            Collections.singletonList(name),
+            Collections.singletonList(agent.getNumExecutors()),
+            to,
+            false)
+        .get(0);
+  }
+
   /**
    * Checks whether the Jenkins master itself is running as a Mesos task and thus has the env var
    * MESOS_SANDBOX defined.
@@ -306,20 +702,11 @@ public class MesosCloud extends AbstractCloudImpl {
   }
 
   /**
-   * Constructs a metrics string.
-   *
    * @param label The label of a node to launch.
-   * @param method The method called.
-   * @param metric The metric of the method.
-   * @return The metric string for this cloud plugin.
+   * @return The label text used in metric names.
    */
-  private String getMetricName(Label label, String method, String metric) {
-    String labelText = (label == null) ? "nolabel" : label.getDisplayName();
-    return getMetricName(labelText, method, metric);
-  }
-
-  private String getMetricName(String label, String method, String metric) {
-    return String.format("mesos.cloud.%s.%s.%s", label, method, metric);
+  private static String getLabelText(Label label) {
+    return (label == null) ? "nolabel" : label.getDisplayName();
   }
 
   /**
@@ -391,6 +778,25 @@ public class MesosCloud extends AbstractCloudImpl {
       }
     }
 
+    /**
+     * Connects all Mesos clouds once Jenkins loaded its configuration. USI then reports the pods
+     * that kept running during a restart and {@link MesosApi} adopts them before they are killed
+     * for being unknown.
+     *
+     * @param h The Jenkins instance.
+     */
+    @Initializer(after = JOB_LOADED)
+    public static void connectClouds(Jenkins h) {
+      final Settings settings = Settings.load(h.pluginManager.uberClassLoader);
+      if (!settings.isAdoptRunningAgents()) {
+        return;
+      }
+      for (MesosCloud cloud : h.clouds.getAll(MesosCloud.class)) {
+        // Connect in the background so that Jenkins does not wait on unreachable Mesos masters.
+        MesosApi.getInstanceAsync(cloud);
+      }
+    }
+
     /**
      * Validates that the Mesos master URL is a valid URL.
      *
@@ -560,6 +966,13 @@ public class MesosCloud extends AbstractCloudImpl {
     return this.agentUser;
   }
 
+  /** @return the decline offer duration migrated from a 1.x cloud if it was set. */
+  public Optional<Duration> getDeclineOfferDuration() {
+    return (this.declineOfferDuration > 0)
+        ? Optional.of(Duration.ofMillis(this.declineOfferDuration))
+        : Optional.empty();
+  }
+
   public String getRole() {
     return this.role;
   }
@@ -2,8 +2,13 @@ package org.jenkinsci.plugins.mesos;
 
 import hudson.model.Executor;
 import hudson.model.Queue;
+import hudson.model.queue.WorkUnit;
 import hudson.slaves.AbstractCloudComputer;
+import hudson.util.HttpResponses;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.json.JSONArray;
 import org.kohsuke.stapler.HttpRedirect;
 import org.kohsuke.stapler.HttpResponse;
 import org.slf4j.Logger;
@@ -18,6 +23,14 @@ public class MesosComputer extends AbstractCloudComputer<MesosJenkinsAgent> {
 
   private final boolean reusable;
   private final String podId;
+  private final String label;
+  private final boolean pooled;
+
+  // The time the computer became available for tasks or zero if it never was online.
+  private volatile long availableSince = 0;
+
+  // The number of tasks this computer accepted. A single-use computer accepts one per executor.
+  private final AtomicInteger acceptedTasks = new AtomicInteger(0);
 
   /**
    * Constructs a new computer. This is called by {@link MesosJenkinsAgent#createComputer()}.
@@ -28,14 +41,25 @@ public class MesosComputer extends AbstractCloudComputer<MesosJenkinsAgent> {
     super(agent);
     this.reusable = agent.getReusable();
     this.podId = agent.getPodId();
+    this.label = agent.getLabelString();
+    this.pooled = agent.isPooled();
+  }
+
+  /**
+   * Marks this computer as available for tasks. Called once the agent came online and whenever a
+   * task completed on the last busy executor.
+   */
+  void markAvailable() {
+    this.availableSince = System.currentTimeMillis();
   }
 
   @Override
   public void taskAccepted(Executor executor, Queue.Task task) {
     super.taskAccepted(executor, task);
-    if (!reusable) {
-      // single use computer will only accept one task, after completing task it will go idle and be
-      // killed by MesosRetentionStrategy
+    recordPoolUsage(executor);
+    if (!reusable && acceptedTasks.incrementAndGet() >= getNumExecutors()) {
+      // single use computer will only accept one task per executor, after completing all tasks it
+      // will go idle and be killed by MesosRetentionStrategy
       logger.info("Computer {}: is no longer accepting tasks and was marked as single-use", this);
       setAcceptingTasks(false);
     }
@@ -45,6 +69,7 @@ public class MesosComputer extends AbstractCloudComputer<MesosJenkinsAgent> {
   @Override
   public void taskCompleted(Executor executor, Queue.Task task, long durationMS) {
     super.taskCompleted(executor, task, durationMS);
+    markAvailableIfIdle();
     logger.info("Computer {}: task completed", this);
   }
 
@@ -52,19 +77,71 @@ public class MesosComputer extends AbstractCloudComputer<MesosJenkinsAgent> {
   public void taskCompletedWithProblems(
       Executor executor, Queue.Task task, long durationMS, Throwable problems) {
     super.taskCompletedWithProblems(executor, task, durationMS, problems);
+    markAvailableIfIdle();
     logger.warn("Computer {} task completed with problems", this);
   }
 
+  /**
+   * Marks this computer as available once no other executor is busy anymore. The completing
+   * executor still counts as busy while it reports the completion.
+   */
+  private void markAvailableIfIdle() {
+    if (countBusy() <= 1) {
+      markAvailable();
+    }
+  }
+
+  /**
+   * Records whether the accepted task found this computer waiting, ie a pool hit, or had to wait
+   * for it, ie a pool miss. The idle time of the computer is recorded for hits. Agents of templates
+   * without a pool are not counted.
+   *
+   * @param executor The executor that accepted the task.
+   */
+  private void recordPoolUsage(Executor executor) {
+    if (!this.pooled) {
+      return;
+    }
+    final long now = System.currentTimeMillis();
+    final WorkUnit workUnit = executor.getCurrentWorkUnit();
+    final long queuedSince = (workUnit != null) ? workUnit.context.item.getInQueueSince() : now;
+    final long available = this.availableSince;
+
+    final LabelMetrics metrics = LabelMetrics.forLabel(this.label);
+    if (available > 0 && available <= queuedSince) {
+      metrics.poolHit().mark();
+      metrics.poolIdleTime().update(now - available, TimeUnit.MILLISECONDS);
+    } else {
+      metrics.poolMiss().mark();
+    }
+  }
+
   @Override
   public String toString() {
     return String.format("%s (slave: %s)", getName(), getNode());
   }
 
+  /** @return the pod id of the agent this computer belongs to. */
+  public String getPodId() {
+    return this.podId;
+  }
+
   @Override
   public MesosJenkinsAgent getNode() {
     return super.getNode();
   }
 
+  /**
+   * Serves the lifecycle timeline of the agent as JSON array at {@code computer/<name>/timeline}.
+   *
+   * @return the recorded events from oldest to newest.
+   */
+  public HttpResponse doTimeline() {
+    checkPermission(EXTENDED_READ);
+    return HttpResponses.okJSON(
+        AgentTimeline.get(this.podId).map(AgentTimeline::toJSON).orElseGet(JSONArray::new));
+  }
+
   @Override
   public HttpResponse doDoDelete() throws IOException {
     try {
@@ -0,0 +1,94 @@
+package org.jenkinsci.plugins.mesos;
+
+import akka.Done;
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens for {@link MesosComputer} instances coming online and completes the futures handed out by
+ * {@link MesosJenkinsAgent#waitUntilOnlineAsync}.
+ *
+ * <p>The registry is keyed by pod id which is also the name of the Jenkins node.
+ */
+@Extension
+public class MesosComputerListener extends ComputerListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(MesosComputerListener.class);
+
+  private static final ConcurrentHashMap<String, CompletableFuture<Done>> pendingAgents =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Registers an agent that waits to come online.
+   *
+   * @param agent The agent that is waited for.
+   * @return a future that completes once the agent is online.
+   */
+  static CompletableFuture<Done> register(MesosJenkinsAgent agent) {
+    final CompletableFuture<Done> online =
+        pendingAgents.computeIfAbsent(agent.getPodId(), id -> new CompletableFuture<>());
+
+    // The agent might have connected before it was registered.
+    if (agent.isOnline()) {
+      complete(agent.getPodId());
+    }
+    return online;
+  }
+
+  /**
+   * Removes an agent from the registry.
+   *
+   * @param podId The pod id of the agent.
+   */
+  static void unregister(String podId) {
+    pendingAgents.remove(podId);
+  }
+
+  /** @return the number of agents that wait to come online. */
+  static int pendingCount() {
+    return pendingAgents.size();
+  }
+
+  private static void complete(String podId) {
+    final CompletableFuture<Done> online = pendingAgents.remove(podId);
+    if (online != null) {
+      logger.debug("Agent {} came online", podId);
+      online.complete(Done.done());
+    }
+  }
+
+  @Override
+  public void onOnline(Computer c, TaskListener listener) {
+    if (c instanceof MesosComputer) {
+      final MesosComputer computer = (MesosComputer) c;
+      computer.markAvailable();
+      AgentTimeline.record(computer.getPodId(), AgentTimeline.Type.ONLINE, "Agent connected");
+      final MesosJenkinsAgent agent = computer.getNode();
+      if (agent != null) {
+        agent.getLaunchPhases().reached(LaunchPhases.Phase.ONLINE);
+        agent.markOnline();
+      }
+      complete(computer.getPodId());
+    }
+  }
+
+  @Override
+  public void onOffline(Computer c, OfflineCause cause) {
+    if (c instanceof MesosComputer) {
+      final MesosComputer computer = (MesosComputer) c;
+      final String reason = (cause != null) ? cause.toString() : "Agent disconnected";
+      AgentTimeline.record(computer.getPodId(), AgentTimeline.Type.OFFLINE, reason);
+      final MesosJenkinsAgent agent = computer.getNode();
+      if (agent != null) {
+        agent.markOffline();
+      }
+    }
+  }
+}
@@ -1,6 +1,5 @@
 package org.jenkinsci.plugins.mesos;
 
-import akka.NotUsed;
 import akka.stream.ActorMaterializer;
 import akka.stream.KillSwitches;
 import akka.stream.SharedKillSwitch;
@@ -18,10 +17,10 @@ import java.io.NotSerializableException;
 import java.net.URL;
 import java.time.Duration;
 import java.util.List;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import jenkins.metrics.api.Metrics;
-import org.apache.mesos.v1.Protos.TaskState;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,8 +32,8 @@ public class MesosJenkinsAgent extends AbstractCloudSlave implements EphemeralNo
 
   private final Duration onlineTimeout;
 
-  // Holds the current USI status for this agent.
-  Optional<PodStatus> currentStatus = Optional.empty();
+  // Holds the current USI status for this agent. Readers never block the USI event handler.
+  private final AtomicReference<AgentStatus> status = new AtomicReference<>(AgentStatus.UNKNOWN);
 
   private final boolean reusable;
 
@@ -46,7 +45,20 @@ public class MesosJenkinsAgent extends AbstractCloudSlave implements EphemeralNo
 
   private final SharedKillSwitch waitUntilOnlineKillSwitch;
 
-  @DataBoundConstructor
+  private final LaunchPhases launchPhases;
+
+  // Whether the template of this agent keeps a pool of idle agents.
+  private final boolean pooled;
+
+  // The state of this agent in the per-label gauges of its framework or null if it is not counted.
+  private final AtomicReference<AgentGauges.State> gaugeState = new AtomicReference<>();
+
+  // Completes once the pod is terminal or was killed before it was launched.
+  private final CompletableFuture<Void> terminal = new CompletableFuture<>();
+
+  // Set when no offer matched the launch before the deadline of its template.
+  private volatile boolean offerMatchDeadlineExceeded = false;
+
   public MesosJenkinsAgent(
       MesosApi api,
       String name,
@@ -58,11 +70,37 @@ public class MesosJenkinsAgent extends AbstractCloudSlave implements EphemeralNo
       List<? extends NodeProperty<?>> nodeProperties,
       Duration agentTimeout)
       throws Descriptor.FormException, IOException {
+    this(
+        api,
+        name,
+        spec,
+        nodeDescription,
+        jenkinsUrl,
+        idleTerminationInMinutes,
+        reusable,
+        nodeProperties,
+        agentTimeout,
+        1);
+  }
+
+  @DataBoundConstructor
+  public MesosJenkinsAgent(
+      MesosApi api,
+      String name,
+      MesosAgentSpecTemplate spec,
+      String nodeDescription,
+      URL jenkinsUrl,
+      Integer idleTerminationInMinutes,
+      boolean reusable,
+      List<? extends NodeProperty<?>> nodeProperties,
+      Duration agentTimeout,
+      int numExecutors)
+      throws Descriptor.FormException, IOException {
     super(
         name,
         nodeDescription,
         "jenkins",
-        1,
+        numExecutors,
         spec.getMode(),
         spec.getLabel(),
         new JNLPLauncher(),
@@ -74,9 +112,11 @@ public class MesosJenkinsAgent extends AbstractCloudSlave implements EphemeralNo
     this.podId = name;
     this.jenkinsUrl = jenkinsUrl;
     this.onlineTimeout = agentTimeout;
+    this.pooled = spec.getMinIdle() > 0;
 
     this.waitUntilOnlineKillSwitch =
         KillSwitches.shared(String.format("wait-until-online-{}", name));
+    this.launchPhases = new LaunchPhases(this.getLabelString());
   }
 
   @Extension
@@ -87,54 +127,60 @@ public class MesosJenkinsAgent extends AbstractCloudSlave implements EphemeralNo
   }
 
   /**
-   * Polls the agent until it is online. Note: This is a non-blocking call in contrast to the
-   * blocking {@link AbstractCloudComputer#waitUntilOnline}.
+   * Waits until the agent is online. Note: This is a non-blocking call in contrast to the blocking
+   * {@link AbstractCloudComputer#waitUntilOnline}.
+   *
+   * <p>The future is completed by {@link MesosComputerListener} as soon as Jenkins reports the
+   * computer online. It fails if the agent does not come online within the agent timeout or if the
+   * Mesos task became terminal.
    *
    * @return The future agent that will come online.
    */
   public CompletableFuture<Node> waitUntilOnlineAsync(ActorMaterializer materializer) {
-    return Source.tick(Duration.ofSeconds(0), Duration.ofSeconds(1), NotUsed.notUsed())
+    return Source.fromCompletionStage(MesosComputerListener.register(this))
         .via(this.waitUntilOnlineKillSwitch.flow())
         .completionTimeout(onlineTimeout)
-        .filter(ignored -> this.isOnline())
         .map(ignored -> this.asNode())
         .runWith(Sink.head(), materializer)
-        .toCompletableFuture();
+        .toCompletableFuture()
+        .whenComplete((node, ex) -> MesosComputerListener.unregister(this.podId));
+  }
+
+  /**
+   * Fails {@link #waitUntilOnlineAsync(ActorMaterializer)} because no offer matched the launch
+   * before the deadline of its template.
+   *
+   * @param deadline The offer match deadline of the template.
+   */
+  void abortOfferMatch(Duration deadline) {
+    this.offerMatchDeadlineExceeded = true;
+    final String message =
+        String.format("No offer matched agent %s within %s", this.getNodeName(), deadline);
+    waitUntilOnlineKillSwitch.abort(new IllegalStateException(message));
+  }
+
+  /** @return whether the launch was aborted because no offer matched in time. */
+  public boolean isOfferMatchDeadlineExceeded() {
+    return this.offerMatchDeadlineExceeded;
   }
 
   /** @return whether the agent is running or not. */
-  public synchronized boolean isRunning() {
-    if (currentStatus.isPresent()) {
-      return currentStatus
-          .get()
-          .taskStatuses()
-          .values()
-          .forall(taskStatus -> taskStatus.getState() == TaskState.TASK_RUNNING);
-    } else {
-      return false;
-    }
+  public boolean isRunning() {
+    return this.status.get().isRunning();
   }
 
   /** @return whether the agent is killed or not. */
-  public synchronized boolean isKilled() {
-    if (currentStatus.isPresent()) {
-      return currentStatus
-          .get()
-          .taskStatuses()
-          .values()
-          .forall(taskStatus -> taskStatus.getState() == TaskState.TASK_KILLED);
-    } else {
-      return false;
-    }
+  public boolean isKilled() {
+    return this.status.get().isKilled();
   }
 
   /** @return whether the agent is terminal or unreachable. */
-  public synchronized boolean isTerminalOrUnreachable() {
-    return currentStatus.map(PodStatus::isTerminalOrUnreachable).orElse(false);
+  public boolean isTerminalOrUnreachable() {
+    return this.status.get().isTerminalOrUnreachable();
   }
 
   /** @return whether the Jenkins agent connected and is online. */
-  public synchronized boolean isOnline() {
+  public boolean isOnline() {
     final Computer computer = this.toComputer();
     if (computer != null) {
       return computer.isOnline();
@@ -145,29 +191,55 @@ public class MesosJenkinsAgent extends AbstractCloudSlave implements EphemeralNo
   }
 
   /** @return whether the agent is launching and not connected yet. */
-  public synchronized boolean isPending() {
+  public boolean isPending() {
     return (!isTerminalOrUnreachable() && !isOnline());
   }
 
+  /** @return the latest status snapshot of this agent. */
+  public AgentStatus getStatus() {
+    return this.status.get();
+  }
+
   /**
    * Updates the state of the slave and takes action on certain events.
    *
+   * <p>USI events of one pod are handled in order by one worker so there is a single writer.
+   *
    * @param event The state event from USI which informs about the task status.
    */
-  public synchronized void update(PodStatusUpdatedEvent event) {
+  public void update(PodStatusUpdatedEvent event) {
     if (event.newStatus().isDefined()) {
-      logger.info("Received new status for {}", event.id().value());
-      this.currentStatus = Optional.of(event.newStatus().get());
+      logger.debug("Received new status for {}", event.id().value());
+      final AgentStatus newStatus = AgentStatus.of(event.newStatus().get());
+      final AgentStatus oldStatus = this.status.getAndSet(newStatus);
+      if (oldStatus.getState() != newStatus.getState()
+          || !oldStatus.getMessage().equals(newStatus.getMessage())) {
+        AgentTimeline.record(
+            this.podId,
+            AgentTimeline.Type.STATUS,
+            String.format("%s: %s", newStatus.getState(), newStatus.getMessage()));
+      }
+
+      if (newStatus.isTerminalOrUnreachable()) {
+        updateGauges(state -> AgentGauges.State.TERMINAL);
+        this.terminal.complete(null);
+      } else if (newStatus.isRunning()) {
+        updateGauges(
+            state ->
+                (state == null || state == AgentGauges.State.PENDING)
+                    ? AgentGauges.State.RUNNING
+                    : state);
+      } else {
+        updateGauges(state -> (state == null) ? AgentGauges.State.PENDING : state);
+      }
 
       // Handle state change.
-      if (this.isTerminalOrUnreachable()) {
+      if (newStatus.isTerminalOrUnreachable()) {
         Metrics.metricRegistry().meter("mesos.agent.terminal").mark();
         String message =
             String.format(
                 "Agent %s became %s: %s",
-                this.getNodeName(),
-                this.currentStatus.get().taskStatuses().values().head().getState(),
-                this.currentStatus.get().taskStatuses().values().head().getMessage());
+                this.getNodeName(), newStatus.getState(), newStatus.getMessage());
         waitUntilOnlineKillSwitch.abort(new IllegalStateException(message));
       }
     }
@@ -193,11 +265,77 @@ public class MesosJenkinsAgent extends AbstractCloudSlave implements EphemeralNo
     }
   }
 
+  /** @return whether the template of this agent keeps a pool of idle agents. */
+  boolean isPooled() {
+    return this.pooled;
+  }
+
   public boolean getReusable() {
     // TODO: implement reusable slaves DCOS_OSS-5048
     return reusable;
   }
 
+  /** Counts this agent as pending once its launch command was queued. */
+  void markQueued() {
+    updateGauges(state -> (state == null) ? AgentGauges.State.PENDING : state);
+  }
+
+  /** Stops counting this agent because its launch command was not queued. */
+  void markNotQueued() {
+    updateGauges(state -> null);
+  }
+
+  /** Counts this agent as terminal because it was killed before its pod was launched. */
+  void markTerminal() {
+    updateGauges(state -> AgentGauges.State.TERMINAL);
+    this.terminal.complete(null);
+  }
+
+  /** @return a future that completes once the pod is terminal or was killed before its launch. */
+  CompletableFuture<Void> whenTerminal() {
+    return this.terminal;
+  }
+
+  /** Counts this agent as online once the Jenkins agent connected. */
+  void markOnline() {
+    updateGauges(state -> AgentGauges.State.ONLINE);
+  }
+
+  /** Counts this agent as running again once the Jenkins agent disconnected. */
+  void markOffline() {
+    updateGauges(state -> (state == AgentGauges.State.ONLINE) ? AgentGauges.State.RUNNING : state);
+  }
+
+  /**
+   * Moves this agent to a new state in the per-label gauges of its framework. A terminal agent
+   * stays terminal.
+   *
+   * @param transition Computes the new state from the current state.
+   */
+  private void updateGauges(UnaryOperator<AgentGauges.State> transition) {
+    AgentGauges.State previous;
+    AgentGauges.State next;
+    do {
+      previous = this.gaugeState.get();
+      if (previous == AgentGauges.State.TERMINAL) {
+        return;
+      }
+      next = transition.apply(previous);
+      if (next == previous) {
+        return;
+      }
+    } while (!this.gaugeState.compareAndSet(previous, next));
+
+    if (this.api != null) {
+      this.api.getAgentGauges().move(this.getLabelString(), previous, next);
+    }
+  }
+
+  /** @return the launch phase latencies of this agent. */
+  LaunchPhases getLaunchPhases() {
+    return this.launchPhases;
+  }
+
   /** get the podId tied to this task. */
   public String getPodId() {
     return podId;
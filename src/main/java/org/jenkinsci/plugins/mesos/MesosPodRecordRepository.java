@@ -1,30 +1,403 @@
 package org.jenkinsci.plugins.mesos;
 
 import akka.Done;
+import com.mesosphere.usi.core.models.AgentId;
+import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.PodRecord;
 import com.mesosphere.usi.repository.PodRecordRepository;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import scala.collection.immutable.HashMap;
 import scala.collection.immutable.Map;
 import scala.compat.java8.FutureConverters;
 import scala.concurrent.Future;
 
+/**
+ * A durable {@link PodRecordRepository} backed by an append-only journal on disk.
+ *
+ * <p>Every {@link #store(Object)} and {@link #delete(Object)} appends an entry to the journal. A
+ * single writer thread collects all pending entries, writes them in one go and syncs the journal
+ * once per batch. The returned futures complete after the sync. Once the journal holds considerably
+ * more entries than live records it is compacted into a fresh journal that only stores the live
+ * records.
+ *
+ * <p>The journal is replayed when the repository is opened. All live records are then kept in a map
+ * on the heap so that {@link #readAll()} is O(pods) and does not touch the disk. A memory-mapped
+ * index would only save the replay, which is bounded by the compaction, and would tie the mapping's
+ * lifetime to the journal file. The map is updated in the same order in which entries are queued
+ * for the journal.
+ *
+ * <p>Each entry is laid out as <code>[length: int][crc32: int][payload]</code>. A torn or corrupt
+ * entry at the end of the journal, eg after a crash, is truncated on recovery.
+ */
 public class MesosPodRecordRepository implements PodRecordRepository {
+
+  private static final Logger logger = LoggerFactory.getLogger(MesosPodRecordRepository.class);
+
+  static final String JOURNAL_FILE = "pod-records.journal";
+
+  private static final byte STORE = 1;
+  private static final byte DELETE = 2;
+
+  private static final int HEADER_SIZE = 8;
+
+  // Compact once the journal has this many entries and twice as many entries as live records.
+  private static final int COMPACTION_THRESHOLD = 1024;
+
+  /** A journal entry that waits for the writer thread. */
+  private static class PendingEntry {
+    final byte[] entry;
+    final CompletableFuture<Done> synced = new CompletableFuture<>();
+
+    PendingEntry(byte[] entry) {
+      this.entry = entry;
+    }
+  }
+
+  private final Path journal;
+  private final ConcurrentHashMap<PodId, PodRecord> records = new ConcurrentHashMap<>();
+  private final LinkedBlockingQueue<PendingEntry> pending = new LinkedBlockingQueue<>();
+  private final ExecutorService writer;
+
+  // Guarded by this.
+  private boolean closed = false;
+
+  // Only accessed by the writer thread after construction.
+  private FileChannel channel;
+  private long journalEntries = 0;
+
+  /**
+   * Opens the journal in the passed directory and recovers all records from it.
+   *
+   * @param directory The directory of the journal. It is created if it does not exist.
+   * @throws IOException if the journal cannot be opened or read.
+   */
+  public MesosPodRecordRepository(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    this.journal = directory.resolve(JOURNAL_FILE);
+    this.channel =
+        FileChannel.open(
+            this.journal,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    recover();
+    this.writer =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "mesos-pod-record-journal");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
   @Override
-  public Future<Done> delete(Object record) {
-    CompletableFuture<Done> javaFuture = CompletableFuture.supplyAsync(() -> Done.done());
-    return FutureConverters.toScala((javaFuture));
+  public Future<Done> delete(Object recordId) {
+    final PodId podId = (PodId) recordId;
+    return FutureConverters.toScala(append(encodeDelete(podId), () -> this.records.remove(podId)));
   }
 
   @Override
   public Future<Done> store(Object record) {
-    CompletableFuture<Done> javaFuture = CompletableFuture.supplyAsync(() -> Done.done());
-    return FutureConverters.toScala((javaFuture));
+    final PodRecord podRecord = (PodRecord) record;
+    return FutureConverters.toScala(
+        append(encodeStore(podRecord), () -> this.records.put(podRecord.podId(), podRecord)));
   }
 
   @Override
   public Future<Map<Object, Object>> readAll() {
     Map<Object, Object> map = new HashMap<>();
-    CompletableFuture<Map<Object, Object>> javaFuture = CompletableFuture.supplyAsync(() -> map);
-    return FutureConverters.toScala((javaFuture));
+    for (java.util.Map.Entry<PodId, PodRecord> record : this.records.entrySet()) {
+      map = map.updated(record.getKey(), record.getValue());
+    }
+    return FutureConverters.toScala(CompletableFuture.completedFuture(map));
+  }
+
+  /** @return the number of entries in the journal. */
+  long getJournalEntries() {
+    return this.journalEntries;
+  }
+
+  /**
+   * Flushes all pending entries and closes the journal. Later writes fail.
+   *
+   * @throws IOException if the journal cannot be closed.
+   */
+  public void close() throws IOException {
+    synchronized (this) {
+      this.closed = true;
+    }
+    this.writer.shutdown();
+    try {
+      this.writer.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.channel.close();
+  }
+
+  /**
+   * Applies an update to the records in memory and queues its journal entry for the writer thread.
+   * Both happen under one lock so that the journal replays to the same records.
+   *
+   * @param entry The encoded entry.
+   * @param update The update of the records in memory.
+   * @return a future that completes once the entry is synced to disk or fails if the repository is
+   *     closed.
+   */
+  private synchronized CompletableFuture<Done> append(byte[] entry, Runnable update) {
+    if (this.closed) {
+      final CompletableFuture<Done> failed = new CompletableFuture<>();
+      failed.completeExceptionally(
+          new IllegalStateException(String.format("Journal %s is closed", this.journal)));
+      return failed;
+    }
+    update.run();
+    final PendingEntry pendingEntry = new PendingEntry(entry);
+    this.pending.add(pendingEntry);
+    this.writer.execute(this::writeBatch);
+    return pendingEntry.synced;
+  }
+
+  /**
+   * Writes all pending entries with one write and one sync.
+   *
+   * <p>This runs on the writer thread only. Later invocations find an empty queue if an earlier one
+   * already picked up their entries.
+   */
+  private void writeBatch() {
+    final List<PendingEntry> batch = new ArrayList<>();
+    this.pending.drainTo(batch);
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    try {
+      int size = 0;
+      for (PendingEntry entry : batch) {
+        size += entry.entry.length;
+      }
+      final ByteBuffer buffer = ByteBuffer.allocate(size);
+      for (PendingEntry entry : batch) {
+        buffer.put(entry.entry);
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        this.channel.write(buffer);
+      }
+      this.channel.force(false);
+      this.journalEntries += batch.size();
+
+      batch.forEach(entry -> entry.synced.complete(Done.done()));
+    } catch (IOException ex) {
+      logger.error("Could not write {} pod records to journal {}", batch.size(), this.journal, ex);
+      batch.forEach(entry -> entry.synced.completeExceptionally(ex));
+      return;
+    }
+
+    if (this.journalEntries > COMPACTION_THRESHOLD
+        && this.journalEntries > 2L * this.records.size()) {
+      compact();
+    }
+  }
+
+  /**
+   * Rewrites the journal with the live records only.
+   *
+   * <p>The compacted journal is written to a temporary file and moved over the old journal. If the
+   * move fails the old journal is reopened so that later writes still succeed.
+   */
+  private void compact() {
+    final Path compacted = this.journal.resolveSibling(JOURNAL_FILE + ".compact");
+    final List<PodRecord> snapshot = new ArrayList<>(this.records.values());
+    try (FileChannel out =
+        FileChannel.open(
+            compacted,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      for (PodRecord record : snapshot) {
+        final ByteBuffer buffer = ByteBuffer.wrap(encodeStore(record));
+        while (buffer.hasRemaining()) {
+          out.write(buffer);
+        }
+      }
+      out.force(false);
+    } catch (IOException ex) {
+      logger.warn("Could not compact journal {}", this.journal, ex);
+      return;
+    }
+
+    try {
+      this.channel.close();
+      Files.move(
+          compacted,
+          this.journal,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      this.channel = FileChannel.open(this.journal, StandardOpenOption.WRITE);
+      this.channel.position(this.channel.size());
+      logger.info(
+          "Compacted journal {} from {} to {} entries",
+          this.journal,
+          this.journalEntries,
+          snapshot.size());
+      this.journalEntries = snapshot.size();
+    } catch (IOException ex) {
+      logger.warn("Could not replace journal {} with compacted journal", this.journal, ex);
+      reopen();
+    }
+  }
+
+  /**
+   * Reopens the old journal after a failed compaction and appends to its end.
+   *
+   * <p>Writes fail with a closed channel if even that fails. The records in memory stay intact.
+   */
+  private void reopen() {
+    try {
+      Files.deleteIfExists(this.journal.resolveSibling(JOURNAL_FILE + ".compact"));
+    } catch (IOException ex) {
+      logger.warn("Could not delete compacted journal of {}", this.journal, ex);
+    }
+    try {
+      if (!this.channel.isOpen()) {
+        this.channel =
+            FileChannel.open(this.journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.position(this.channel.size());
+      }
+    } catch (IOException ex) {
+      logger.error("Could not reopen journal {}", this.journal, ex);
+    }
+  }
+
+  /**
+   * Replays the journal and truncates a torn tail.
+   *
+   * <p>The journal is read into a heap buffer. Compaction keeps it small and unlike a mapping the
+   * buffer does not keep the file locked on Windows until it is garbage collected.
+   *
+   * @throws IOException if the journal cannot be read.
+   */
+  private void recover() throws IOException {
+    final long size = this.channel.size();
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException(String.format("Journal %s is too large to recover", this.journal));
+    }
+    final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    while (buffer.hasRemaining()) {
+      if (this.channel.read(buffer, buffer.position()) < 0) {
+        break;
+      }
+    }
+    buffer.flip();
+
+    long valid = 0;
+    while (buffer.remaining() >= HEADER_SIZE) {
+      final int length = buffer.getInt();
+      final int checksum = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining()) {
+        break;
+      }
+      final byte[] payload = new byte[length];
+      buffer.get(payload);
+      if (checksum(payload) != checksum) {
+        break;
+      }
+      replay(payload);
+      this.journalEntries++;
+      valid = buffer.position();
+    }
+
+    if (valid < size) {
+      logger.warn(
+          "Truncating {} bytes of torn or corrupt entries from journal {}",
+          size - valid,
+          this.journal);
+      this.channel.truncate(valid);
+    }
+    this.channel.position(valid);
+    logger.info("Recovered {} pod records from journal {}", this.records.size(), this.journal);
+  }
+
+  private void replay(byte[] payload) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    final byte operation = in.readByte();
+    final PodId podId = new PodId(in.readUTF());
+    if (operation == STORE) {
+      final Instant launchedAt = Instant.ofEpochSecond(in.readLong(), in.readInt());
+      final AgentId agentId = new AgentId(in.readUTF());
+      this.records.put(podId, new PodRecord(podId, launchedAt, agentId));
+    } else if (operation == DELETE) {
+      this.records.remove(podId);
+    } else {
+      throw new IOException(String.format("Unknown journal operation %d", operation));
+    }
+  }
+
+  private static byte[] encodeStore(PodRecord record) {
+    return encode(
+        out -> {
+          out.writeByte(STORE);
+          out.writeUTF(record.podId().value());
+          out.writeLong(record.launchedAt().getEpochSecond());
+          out.writeInt(record.launchedAt().getNano());
+          out.writeUTF(record.agentId().value());
+        });
+  }
+
+  private static byte[] encodeDelete(PodId podId) {
+    return encode(
+        out -> {
+          out.writeByte(DELETE);
+          out.writeUTF(podId.value());
+        });
+  }
+
+  /** Writes a payload into the journal entry layout. */
+  private interface PayloadWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private static byte[] encode(PayloadWriter writer) {
+    try {
+      final ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+      writer.write(new DataOutputStream(payload));
+      final byte[] bytes = payload.toByteArray();
+      return ByteBuffer.allocate(HEADER_SIZE + bytes.length)
+          .putInt(bytes.length)
+          .putInt(checksum(bytes))
+          .put(bytes)
+          .array();
+    } catch (IOException ex) {
+      throw new IllegalStateException("Could not encode journal entry", ex);
+    }
+  }
+
+  private static int checksum(byte[] payload) {
+    final CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+    return (int) crc.getValue();
   }
 }
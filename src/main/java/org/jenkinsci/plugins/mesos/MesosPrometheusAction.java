@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.mesos;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves the metrics of the Mesos plugin and USI in the Prometheus text format at {@code
+ * /mesos-metrics/prometheus}. It requires the view permission of the metrics plugin.
+ */
+@Extension
+public class MesosPrometheusAction implements RootAction {
+
+  private final PrometheusExporter exporter = new PrometheusExporter();
+
+  @Override
+  public String getIconFileName() {
+    return null;
+  }
+
+  @Override
+  public String getDisplayName() {
+    return "Mesos Metrics";
+  }
+
+  @Override
+  public String getUrlName() {
+    return "mesos-metrics";
+  }
+
+  /**
+   * Writes all metrics of the plugin.
+   *
+   * @param req The scrape request.
+   * @param rsp The response.
+   * @throws IOException if the response could not be written.
+   */
+  public void doPrometheus(StaplerRequest req, StaplerResponse rsp) throws IOException {
+    final Jenkins instance = Jenkins.get();
+    instance.checkPermission(jenkins.metrics.api.Metrics.VIEW);
+    this.exporter.attach(jenkins.metrics.api.Metrics.metricRegistry());
+
+    final Map<String, String> roles = new HashMap<>();
+    for (MesosCloud cloud : instance.clouds.getAll(MesosCloud.class)) {
+      roles.put(Metrics.sanitize(cloud.getFrameworkName()), cloud.getRole());
+    }
+
+    rsp.setContentType(PrometheusExporter.CONTENT_TYPE);
+    try (Writer writer = rsp.getWriter()) {
+      this.exporter.write(writer, roles);
+    }
+  }
+}
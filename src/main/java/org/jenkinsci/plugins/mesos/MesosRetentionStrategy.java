@@ -1,8 +1,10 @@
 package org.jenkinsci.plugins.mesos;
 
 import hudson.model.Descriptor;
+import hudson.slaves.AbstractCloudComputer;
 import hudson.slaves.CloudRetentionStrategy;
 import hudson.slaves.RetentionStrategy;
+import jenkins.model.Jenkins;
 
 /** A strategy to terminate idle {@link MesosComputer} */
 public class MesosRetentionStrategy extends CloudRetentionStrategy {
@@ -16,6 +18,27 @@ public class MesosRetentionStrategy extends CloudRetentionStrategy {
     super(idleMinutes);
   }
 
+  /**
+   * Terminates the computer if it was idle for too long unless it is part of the warm pool of its
+   * {@link MesosAgentSpecTemplate}.
+   */
+  @Override
+  public long check(AbstractCloudComputer c) {
+    if (c instanceof MesosComputer && isReservedForPool((MesosComputer) c)) {
+      return 1;
+    }
+    return super.check(c);
+  }
+
+  private static boolean isReservedForPool(MesosComputer computer) {
+    for (MesosCloud cloud : Jenkins.get().clouds.getAll(MesosCloud.class)) {
+      if (cloud.isReservedForPool(computer)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public static class DescriptorImpl extends Descriptor<RetentionStrategy<?>> {
     @Override
     public String getDisplayName() {
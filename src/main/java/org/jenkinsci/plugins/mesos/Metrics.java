@@ -2,14 +2,26 @@ package org.jenkinsci.plugins.mesos;
 
 import com.mesosphere.usi.metrics.dropwizard.conf.HistorgramSettings;
 import com.mesosphere.usi.metrics.dropwizard.conf.MetricsSettings;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nonnull;
 import scala.Option;
 
 public class Metrics {
 
+  // USI metrics by sanitized prefix.
   @Nonnull
-  private static HashMap<String, com.mesosphere.usi.metrics.Metrics> metrics = new HashMap<>();
+  private static final ConcurrentHashMap<String, com.mesosphere.usi.metrics.Metrics> metrics =
+      new ConcurrentHashMap<>();
+
+  // The prefixes of all USI metrics.
+  @Nonnull private static final Set<String> prefixes = ConcurrentHashMap.newKeySet();
+
+  // USI metrics by framework name so that the name is only sanitized once.
+  @Nonnull
+  private static final ConcurrentHashMap<String, com.mesosphere.usi.metrics.Metrics> byName =
+      new ConcurrentHashMap<>();
 
   /**
    * The USI metrics is a singleton per framework name.
@@ -20,28 +32,36 @@ public class Metrics {
    * @param frameworkName The name of the framework that is used as a prefix.
    * @return The Metrics implementation for the framework.
    */
-  public static synchronized com.mesosphere.usi.metrics.Metrics getInstance(String frameworkName) {
-    final String prefix = sanitize(frameworkName);
-    if (!metrics.containsKey(prefix)) {
-      // Construct metrics
-      MetricsSettings metricsSettings =
-          new MetricsSettings(
-              sanitize(frameworkName),
-              HistorgramSettings.apply(
-                  HistorgramSettings.apply$default$1(),
-                  HistorgramSettings.apply$default$2(),
-                  HistorgramSettings.apply$default$3(),
-                  HistorgramSettings.apply$default$4(),
-                  HistorgramSettings.apply$default$5()),
-              Option.empty(),
-              Option.empty());
-      metrics.put(
-          prefix,
-          new com.mesosphere.usi.metrics.dropwizard.DropwizardMetrics(
-              metricsSettings, jenkins.metrics.api.Metrics.metricRegistry()));
+  public static com.mesosphere.usi.metrics.Metrics getInstance(String frameworkName) {
+    final com.mesosphere.usi.metrics.Metrics cached = byName.get(frameworkName);
+    if (cached != null) {
+      return cached;
     }
+    return byName.computeIfAbsent(
+        frameworkName, name -> metrics.computeIfAbsent(sanitize(name), Metrics::create));
+  }
+
+  /** @return the sanitized prefixes of all USI metrics. */
+  static Set<String> getPrefixes() {
+    return Collections.unmodifiableSet(prefixes);
+  }
 
-    return metrics.get(prefix);
+  private static com.mesosphere.usi.metrics.Metrics create(String prefix) {
+    // Known before USI registers its first metric.
+    prefixes.add(prefix);
+    MetricsSettings metricsSettings =
+        new MetricsSettings(
+            prefix,
+            HistorgramSettings.apply(
+                HistorgramSettings.apply$default$1(),
+                HistorgramSettings.apply$default$2(),
+                HistorgramSettings.apply$default$3(),
+                HistorgramSettings.apply$default$4(),
+                HistorgramSettings.apply$default$5()),
+            Option.empty(),
+            Option.empty());
+    return new com.mesosphere.usi.metrics.dropwizard.DropwizardMetrics(
+        metricsSettings, jenkins.metrics.api.Metrics.metricRegistry());
   }
 
   /** @return a santized prefix for Dropwizard metrics. */
@@ -69,7 +69,10 @@ public class NoDelayProvisionerStrategy extends NodeProvisioner.Strategy {
         logger.info("Planned {} new nodes", plannedNodes.size());
         fireOnStarted(cloud, strategyState.getLabel(), plannedNodes);
         strategyState.recordPendingLaunches(plannedNodes);
-        availableCapacity += plannedNodes.size();
+        // Planned nodes might have multiple executors.
+        for (PlannedNode plannedNode : plannedNodes) {
+          availableCapacity += plannedNode.numExecutors;
+        }
         logger.info(
             "After provisioning, available capacity={}, currentDemand={}",
             availableCapacity,
@@ -0,0 +1,236 @@
+package org.jenkinsci.plugins.mesos;
+
+import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.constraints.AgentFilter;
+import com.mesosphere.usi.core.models.constraints.AttributeStringIsFilter;
+import com.mesosphere.usi.core.models.resources.ResourceRequirement;
+import com.mesosphere.usi.core.models.resources.ScalarRequirement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import net.sf.json.JSONObject;
+import org.apache.mesos.v1.Protos.DomainInfo;
+import org.jenkinsci.plugins.mesos.api.LaunchPrototype;
+
+/**
+ * Explains why queued agents do not get an offer. The capacity of the Mesos agents is sampled
+ * periodically and each agent that waits for an offer is checked against it. The first constraint
+ * that rules out a Mesos agent is recorded as the {@link Reason}.
+ *
+ * <p>The rejections are counted per label in {@code mesos.cloud.<label>.offer-rejected.<reason>}.
+ * The last diagnosis of each waiting agent is served by {@link MesosCloud#doOfferDiagnostics()}.
+ */
+final class OfferDiagnostics {
+
+  /** The constraints that can rule out a Mesos agent. */
+  enum Reason {
+    // The agent's task requires more resources than are unallocated.
+    CPUS("cpus"),
+    MEM("mem"),
+    DISK("disk"),
+    // The Mesos agent is in a fault domain the template does not accept.
+    DOMAIN("domain"),
+    // An attribute of the Mesos agent does not match.
+    ATTRIBUTE("attribute"),
+    // The resources are only available when reserved for other roles.
+    ROLE("role");
+
+    private final String metric;
+
+    Reason(String metric) {
+      this.metric = metric;
+    }
+
+    String getMetric() {
+      return this.metric;
+    }
+  }
+
+  /** The result of checking one launch against a sample of Mesos agents. */
+  static final class Diagnosis {
+    final Instant sampledAt;
+    final int agents;
+    final int matching;
+    final Map<Reason, Integer> rejected;
+
+    Diagnosis(Instant sampledAt, int agents, int matching, Map<Reason, Integer> rejected) {
+      this.sampledAt = sampledAt;
+      this.agents = agents;
+      this.matching = matching;
+      this.rejected = Collections.unmodifiableMap(rejected);
+    }
+
+    JSONObject toJSON() {
+      final JSONObject json = new JSONObject();
+      json.put("sampledAt", this.sampledAt.toString());
+      json.put("agents", this.agents);
+      json.put("matching", this.matching);
+      final JSONObject reasons = new JSONObject();
+      this.rejected.forEach((reason, count) -> reasons.put(reason.getMetric(), count));
+      json.put("rejected", reasons);
+      return json;
+    }
+  }
+
+  /** An agent that waits for an offer. */
+  private static final class Pending {
+    final String label;
+    final LaunchPrototype prototype;
+    final Instant queuedAt;
+    volatile Diagnosis diagnosis = null;
+
+    Pending(String label, LaunchPrototype prototype, Instant queuedAt) {
+      this.label = label;
+      this.prototype = prototype;
+      this.queuedAt = queuedAt;
+    }
+  }
+
+  private final ConcurrentHashMap<PodId, Pending> pending = new ConcurrentHashMap<>();
+
+  /**
+   * Registers a queued agent.
+   *
+   * @param podId The pod id of the agent.
+   * @param label The label string of the agent.
+   * @param prototype The prototype of the agent's launch command.
+   */
+  void register(PodId podId, String label, LaunchPrototype prototype) {
+    final String labelName = (label == null || label.isEmpty()) ? "nolabel" : label;
+    this.pending.put(podId, new Pending(labelName, prototype, Instant.now()));
+  }
+
+  /**
+   * Drops all agents that do not wait for an offer anymore.
+   *
+   * @param waiting Tests whether the agent of a pod id still waits for an offer.
+   * @param minWait Agents that were queued for a shorter time are not due for a diagnosis.
+   * @return whether any agent is due for a diagnosis.
+   */
+  boolean prune(Predicate<PodId> waiting, Duration minWait) {
+    this.pending.keySet().removeIf(waiting.negate());
+    final Instant due = Instant.now().minus(minWait);
+    return this.pending.values().stream().anyMatch(p -> !p.queuedAt.isAfter(due));
+  }
+
+  /**
+   * Checks all waiting agents against a sample of Mesos agents and counts the rejections.
+   *
+   * @param agents The sampled Mesos agents.
+   * @param masterDomain The fault domain of the Mesos master.
+   */
+  void diagnose(List<AgentCapacity> agents, Optional<DomainInfo> masterDomain) {
+    final Instant now = Instant.now();
+    // Agents of the same template share their prototype so each one is checked once.
+    final Map<LaunchPrototype, Diagnosis> diagnoses = new IdentityHashMap<>();
+    for (Pending launch : this.pending.values()) {
+      final Diagnosis diagnosis =
+          diagnoses.computeIfAbsent(
+              launch.prototype, prototype -> diagnose(prototype, agents, masterDomain, now));
+      launch.diagnosis = diagnosis;
+      final LabelMetrics metrics = LabelMetrics.forLabel(launch.label);
+      diagnosis.rejected.forEach((reason, count) -> metrics.offerRejected(reason).mark(count));
+    }
+  }
+
+  private static Diagnosis diagnose(
+      LaunchPrototype prototype,
+      List<AgentCapacity> agents,
+      Optional<DomainInfo> masterDomain,
+      Instant now) {
+    final Map<Reason, Integer> rejected = new EnumMap<>(Reason.class);
+    int matching = 0;
+    for (AgentCapacity agent : agents) {
+      final Optional<Reason> reason = reject(prototype, agent, masterDomain);
+      if (reason.isPresent()) {
+        rejected.merge(reason.get(), 1, Integer::sum);
+      } else {
+        matching++;
+      }
+    }
+    return new Diagnosis(now, agents.size(), matching, rejected);
+  }
+
+  /**
+   * Checks whether a Mesos agent could run the agent's task.
+   *
+   * @param prototype The prototype of the agent's launch command.
+   * @param agent The sampled Mesos agent.
+   * @param masterDomain The fault domain of the Mesos master.
+   * @return the first constraint that rules out the Mesos agent or empty if it could run the task.
+   */
+  static Optional<Reason> reject(
+      LaunchPrototype prototype, AgentCapacity agent, Optional<DomainInfo> masterDomain) {
+    for (AgentFilter filter : prototype.getAgentFilters()) {
+      if (filter instanceof AttributeStringIsFilter) {
+        final AttributeStringIsFilter attribute = (AttributeStringIsFilter) filter;
+        if (!attribute.value().equals(agent.getAttributes().get(attribute.attributeName()))) {
+          return Optional.of(Reason.ATTRIBUTE);
+        }
+      }
+    }
+
+    if (masterDomain.isPresent()
+        && agent.getDomain().isPresent()
+        && !prototype.getDomainFilter().apply(masterDomain.get(), agent.getDomain().get())) {
+      return Optional.of(Reason.DOMAIN);
+    }
+
+    Optional<Reason> insufficient = Optional.empty();
+    boolean anyRole = true;
+    for (ResourceRequirement requirement : prototype.getRequirements()) {
+      if (!(requirement instanceof ScalarRequirement)) {
+        continue;
+      }
+      final ScalarRequirement scalar = (ScalarRequirement) requirement;
+      final String resource = scalar.resourceType().name();
+      if (agent.getFree(resource, prototype.getRole()) < scalar.amount()) {
+        if (!insufficient.isPresent()) {
+          insufficient = reasonOf(resource);
+        }
+        anyRole &= agent.getFreeForAnyRole(resource) >= scalar.amount();
+      }
+    }
+    if (insufficient.isPresent() && anyRole) {
+      return Optional.of(Reason.ROLE);
+    }
+    return insufficient;
+  }
+
+  private static Optional<Reason> reasonOf(String resource) {
+    switch (resource) {
+      case "cpus":
+        return Optional.of(Reason.CPUS);
+      case "mem":
+        return Optional.of(Reason.MEM);
+      case "disk":
+        return Optional.of(Reason.DISK);
+      default:
+        return Optional.empty();
+    }
+  }
+
+  /** @return the last diagnosis of each waiting agent by pod id. */
+  JSONObject toJSON() {
+    final JSONObject json = new JSONObject();
+    this.pending.forEach(
+        (podId, launch) -> {
+          final JSONObject entry = new JSONObject();
+          entry.put("label", launch.label);
+          entry.put("queuedAt", launch.queuedAt.toString());
+          final Diagnosis diagnosis = launch.diagnosis;
+          if (diagnosis != null) {
+            entry.put("diagnosis", diagnosis.toJSON());
+          }
+          json.put(podId.value(), entry);
+        });
+    return json;
+  }
+}
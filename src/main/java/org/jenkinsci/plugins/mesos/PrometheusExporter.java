@@ -0,0 +1,340 @@
+package org.jenkinsci.plugins.mesos;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exports the plugin and USI metrics in the Prometheus text format with labels instead of dotted
+ * names, eg {@code mesos.cloud.linux.launch.running} becomes {@code
+ * mesos_cloud_launch_seconds{label="linux",phase="running"}}.
+ *
+ * <p>The exporter listens to the Jenkins registry and indexes the metrics of this plugin as they
+ * are added and removed. A scrape only walks the index, not the whole registry. Dropwizard timers
+ * and histograms have no buckets. They are exported as summaries with the quantiles of their
+ * reservoir and their count. {@code _sum} is omitted since Dropwizard keeps no monotonic sum and
+ * one derived from the decaying reservoir could decrease, which breaks {@code rate()}.
+ */
+final class PrometheusExporter implements MetricRegistryListener {
+
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+
+  /** A metric with its Prometheus family name and labels. */
+  static final class Sample {
+    final String family;
+    final Map<String, String> labels;
+    final Metric metric;
+
+    Sample(String family, Map<String, String> labels, Metric metric) {
+      this.family = family;
+      this.labels = labels;
+      this.metric = metric;
+    }
+  }
+
+  private final ConcurrentHashMap<String, Sample> index = new ConcurrentHashMap<>();
+  private MetricRegistry registry = null;
+
+  /**
+   * Indexes the metrics of the passed registry. The index is rebuilt if the registry changed, eg
+   * after a Jenkins restart.
+   *
+   * @param current The Jenkins metrics registry.
+   */
+  synchronized void attach(MetricRegistry current) {
+    if (this.registry == current) {
+      return;
+    }
+    if (this.registry != null) {
+      this.registry.removeListener(this);
+    }
+    this.index.clear();
+    this.registry = current;
+    // Replays all registered metrics.
+    current.addListener(this);
+  }
+
+  /**
+   * Writes all indexed metrics.
+   *
+   * @param writer The response writer.
+   * @param roles The Mesos role by sanitized framework name. It is added as label to all metrics of
+   *     a framework.
+   * @throws IOException if the response could not be written.
+   */
+  void write(Writer writer, Map<String, String> roles) throws IOException {
+    final Map<String, List<Sample>> families = new TreeMap<>();
+    for (Sample sample : this.index.values()) {
+      families.computeIfAbsent(sample.family, family -> new ArrayList<>()).add(sample);
+    }
+
+    for (Map.Entry<String, List<Sample>> family : families.entrySet()) {
+      final Metric first = family.getValue().get(0).metric;
+      writer.write(String.format("# TYPE %s %s\n", family.getKey(), typeOf(first)));
+      for (Sample sample : family.getValue()) {
+        final Map<String, String> labels = new LinkedHashMap<>(sample.labels);
+        final String framework = labels.get("framework");
+        if (framework != null && roles.containsKey(framework)) {
+          labels.put("role", roles.get(framework));
+        }
+        writeSample(writer, family.getKey(), labels, sample.metric);
+      }
+    }
+  }
+
+  private static String typeOf(Metric metric) {
+    if (metric instanceof Meter) {
+      return "counter";
+    } else if (metric instanceof Timer || metric instanceof Histogram) {
+      return "summary";
+    } else {
+      return "gauge";
+    }
+  }
+
+  private static void writeSample(
+      Writer writer, String family, Map<String, String> labels, Metric metric) throws IOException {
+    if (metric instanceof Meter) {
+      writeLine(writer, family, labels, ((Meter) metric).getCount());
+    } else if (metric instanceof Counter) {
+      writeLine(writer, family, labels, ((Counter) metric).getCount());
+    } else if (metric instanceof Timer) {
+      final Timer timer = (Timer) metric;
+      writeSummary(writer, family, labels, timer.getSnapshot(), timer.getCount(), 1e9);
+    } else if (metric instanceof Histogram) {
+      final Histogram histogram = (Histogram) metric;
+      writeSummary(writer, family, labels, histogram.getSnapshot(), histogram.getCount(), 1.0);
+    } else if (metric instanceof Gauge) {
+      final Object value = ((Gauge<?>) metric).getValue();
+      if (value instanceof Number) {
+        writeLine(writer, family, labels, ((Number) value).doubleValue());
+      } else if (value instanceof Boolean) {
+        writeLine(writer, family, labels, ((Boolean) value) ? 1 : 0);
+      }
+    }
+  }
+
+  private static void writeSummary(
+      Writer writer,
+      String family,
+      Map<String, String> labels,
+      Snapshot snapshot,
+      long count,
+      double divisor)
+      throws IOException {
+    for (double quantile : QUANTILES) {
+      final Map<String, String> quantileLabels = new LinkedHashMap<>(labels);
+      quantileLabels.put("quantile", Double.toString(quantile));
+      writeLine(writer, family, quantileLabels, snapshot.getValue(quantile) / divisor);
+    }
+    writeLine(writer, family + "_count", labels, count);
+  }
+
+  private static void writeLine(
+      Writer writer, String name, Map<String, String> labels, double value) throws IOException {
+    writer.write(name);
+    if (!labels.isEmpty()) {
+      writer.write('{');
+      boolean first = true;
+      for (Map.Entry<String, String> label : labels.entrySet()) {
+        if (!first) {
+          writer.write(',');
+        }
+        first = false;
+        writer.write(label.getKey());
+        writer.write("=\"");
+        writer.write(escape(label.getValue()));
+        writer.write('"');
+      }
+      writer.write('}');
+    }
+    writer.write(' ');
+    writer.write(Double.toString(value));
+    writer.write('\n');
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /**
+   * Maps a dotted Dropwizard name of this plugin or USI to a family name and labels.
+   *
+   * @param name The Dropwizard name.
+   * @param metric The metric.
+   * @return the sample or empty if the metric does not belong to this plugin.
+   */
+  static Optional<Sample> parse(String name, Metric metric) {
+    final String suffix = suffixOf(metric);
+    if (name.startsWith("mesos.cloud.spec-for-label.")) {
+      return sample(
+          "mesos_cloud_spec_for_label" + suffix,
+          metric,
+          "result",
+          name.substring("mesos.cloud.spec-for-label.".length()));
+    } else if (name.startsWith("mesos.cloud.")) {
+      // The label may contain dots so it is parsed from the end.
+      final int metricStart = name.lastIndexOf('.');
+      final int methodStart = name.lastIndexOf('.', metricStart - 1);
+      if (methodStart <= "mesos.cloud".length()) {
+        return Optional.empty();
+      }
+      final String label = name.substring("mesos.cloud.".length(), methodStart);
+      final String method = name.substring(methodStart + 1, metricStart);
+      final String metricName = name.substring(metricStart + 1);
+      if ("launch".equals(method)) {
+        return sample("mesos_cloud_launch" + suffix, metric, "label", label, "phase", metricName);
+      }
+      if ("offer-rejected".equals(method)) {
+        return sample(
+            "mesos_cloud_offer_rejected" + suffix, metric, "label", label, "reason", metricName);
+      }
+      final String family = familyOf("mesos_cloud_" + method + "_" + metricName) + suffix;
+      return sample(family, metric, "label", label);
+    } else if (name.startsWith("mesos.framework.")) {
+      final String rest = name.substring("mesos.framework.".length());
+      final int agents = rest.indexOf(".agents.");
+      if (agents > 0) {
+        final String labelAndState = rest.substring(agents + ".agents.".length());
+        final int stateStart = labelAndState.lastIndexOf('.');
+        if (stateStart < 0) {
+          return Optional.empty();
+        }
+        return sample(
+            "mesos_framework_agents",
+            metric,
+            "framework",
+            rest.substring(0, agents),
+            "label",
+            labelAndState.substring(0, stateStart),
+            "state",
+            labelAndState.substring(stateStart + 1));
+      }
+      final int queue = rest.indexOf(".command-queue.");
+      if (queue > 0) {
+        final String metricName = rest.substring(queue + ".command-queue.".length());
+        return sample(
+            familyOf("mesos_framework_command_queue_" + metricName) + suffix,
+            metric,
+            "framework",
+            rest.substring(0, queue));
+      }
+      final int offers = rest.indexOf(".offers.");
+      if (offers > 0) {
+        final String metricName = rest.substring(offers + ".offers.".length());
+        return sample(
+            familyOf("mesos_framework_offers_" + metricName) + suffix,
+            metric,
+            "framework",
+            rest.substring(0, offers));
+      }
+      return Optional.empty();
+    } else if (name.startsWith("mesos.agent.")) {
+      return sample(familyOf(name) + suffix, metric);
+    }
+
+    for (String prefix : Metrics.getPrefixes()) {
+      if (name.startsWith(prefix + ".")) {
+        final String usiName = name.substring(prefix.length() + 1);
+        return sample(familyOf("usi_" + usiName) + suffix, metric, "framework", prefix);
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static Optional<Sample> sample(String family, Metric metric, String... labels) {
+    final Map<String, String> labelMap = new LinkedHashMap<>();
+    for (int i = 0; i + 1 < labels.length; i += 2) {
+      labelMap.put(labels[i], labels[i + 1]);
+    }
+    return Optional.of(new Sample(family, Collections.unmodifiableMap(labelMap), metric));
+  }
+
+  private static String familyOf(String name) {
+    return name.replaceAll("[^a-zA-Z0-9_]", "_");
+  }
+
+  private static String suffixOf(Metric metric) {
+    if (metric instanceof Meter) {
+      return "_total";
+    } else if (metric instanceof Timer) {
+      return "_seconds";
+    } else {
+      return "";
+    }
+  }
+
+  private void index(String name, Metric metric) {
+    parse(name, metric).ifPresent(sample -> this.index.put(name, sample));
+  }
+
+  // MetricRegistryListener
+
+  @Override
+  public void onGaugeAdded(String name, Gauge<?> gauge) {
+    index(name, gauge);
+  }
+
+  @Override
+  public void onGaugeRemoved(String name) {
+    this.index.remove(name);
+  }
+
+  @Override
+  public void onCounterAdded(String name, Counter counter) {
+    index(name, counter);
+  }
+
+  @Override
+  public void onCounterRemoved(String name) {
+    this.index.remove(name);
+  }
+
+  @Override
+  public void onHistogramAdded(String name, Histogram histogram) {
+    index(name, histogram);
+  }
+
+  @Override
+  public void onHistogramRemoved(String name) {
+    this.index.remove(name);
+  }
+
+  @Override
+  public void onMeterAdded(String name, Meter meter) {
+    index(name, meter);
+  }
+
+  @Override
+  public void onMeterRemoved(String name) {
+    this.index.remove(name);
+  }
+
+  @Override
+  public void onTimerAdded(String name, Timer timer) {
+    index(name, timer);
+  }
+
+  @Override
+  public void onTimerRemoved(String name) {
+    this.index.remove(name);
+  }
+}
@@ -0,0 +1,205 @@
+package org.jenkinsci.plugins.mesos.api;
+
+import akka.stream.QueueOfferResult;
+import akka.stream.javadsl.SourceQueueWithComplete;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.mesosphere.usi.core.models.commands.SchedulerCommand;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import org.jenkinsci.plugins.mesos.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The queue of {@link SchedulerCommand} in front of the USI scheduler flow.
+ *
+ * <p>In {@link OverflowMode#DROP_NEW} mode a command is dropped as soon as the buffer of the stream
+ * is full. In {@link OverflowMode#BACKPRESSURE} mode the stream buffer applies backpressure and
+ * commands are parked in a bounded overflow buffer. The overflow buffer is flushed in order as USI
+ * drains the stream. A command is only dropped once the overflow buffer is full as well.
+ */
+public class CommandQueue {
+
+  private static final Logger logger = LoggerFactory.getLogger(CommandQueue.class);
+
+  /** Defines how the queue behaves when the stream buffer is full. */
+  public enum OverflowMode {
+    DROP_NEW,
+    BACKPRESSURE;
+
+    /**
+     * Parses the overflow mode from a config value such as "drop-new" or "backpressure".
+     *
+     * @param value The config value.
+     * @return the matching overflow mode.
+     */
+    public static OverflowMode fromConfig(String value) {
+      return OverflowMode.valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+  }
+
+  /** A command that waits in the overflow buffer. */
+  private static class PendingCommand {
+    final SchedulerCommand command;
+    final CompletableFuture<QueueOfferResult> result = new CompletableFuture<>();
+
+    PendingCommand(SchedulerCommand command) {
+      this.command = command;
+    }
+  }
+
+  @Nonnull private final SourceQueueWithComplete<SchedulerCommand> queue;
+  private final OverflowMode overflowMode;
+  private final int overflowBufferSize;
+
+  // Commands that wait for the stream to accept them. Guarded by this.
+  private final Deque<PendingCommand> overflowBuffer = new ArrayDeque<>();
+  private boolean offering = false;
+
+  // Metrics
+  private final MetricRegistry registry;
+  private final AtomicInteger depth = new AtomicInteger(0);
+  private final Gauge<Integer> depthGauge = this.depth::get;
+  private final Timer enqueueLatency;
+  private final Meter drops;
+
+  /**
+   * Constructs a new command queue.
+   *
+   * @param queue The running source queue of the USI scheduler flow.
+   * @param overflowMode The {@link OverflowMode} the source queue was created for.
+   * @param overflowBufferSize The maximum number of commands that are parked when the stream
+   *     applies backpressure.
+   * @param registry The registry for the queue metrics.
+   * @param frameworkName The framework name used as a prefix for the queue metrics.
+   */
+  public CommandQueue(
+      SourceQueueWithComplete<SchedulerCommand> queue,
+      OverflowMode overflowMode,
+      int overflowBufferSize,
+      MetricRegistry registry,
+      String frameworkName) {
+    this.queue = queue;
+    this.overflowMode = overflowMode;
+    this.overflowBufferSize = overflowBufferSize;
+
+    final String prefix =
+        String.format("mesos.framework.%s.command-queue", Metrics.sanitize(frameworkName));
+    this.registry = registry;
+    this.enqueueLatency = registry.timer(prefix + ".enqueue-latency");
+    this.drops = registry.meter(prefix + ".dropped");
+    registry.remove(prefix + ".depth");
+    registry.register(prefix + ".depth", this.depthGauge);
+  }
+
+  /** Removes the depth gauge of this queue from the registry unless another one replaced it. */
+  public void close() {
+    this.registry.removeMatching((name, metric) -> metric == this.depthGauge);
+  }
+
+  /**
+   * Offers a command to USI.
+   *
+   * @param command The command to offer.
+   * @return the result of the offer once the stream accepted or dropped the command.
+   */
+  public CompletionStage<QueueOfferResult> offer(SchedulerCommand command) {
+    final Timer.Context latency = this.enqueueLatency.time();
+    this.depth.incrementAndGet();
+
+    final CompletionStage<QueueOfferResult> result;
+    if (this.overflowMode == OverflowMode.BACKPRESSURE) {
+      result = offerWithBackpressure(command);
+    } else {
+      result = this.queue.offer(command);
+    }
+
+    return result.whenComplete(
+        (offerResult, ex) -> {
+          latency.stop();
+          this.depth.decrementAndGet();
+          if (offerResult == QueueOfferResult.dropped()) {
+            this.drops.mark();
+          }
+        });
+  }
+
+  /** Parks the command if another offer is in flight or offers it right away. */
+  private CompletionStage<QueueOfferResult> offerWithBackpressure(SchedulerCommand command) {
+    final PendingCommand pending = new PendingCommand(command);
+    synchronized (this) {
+      if (this.offering) {
+        if (this.overflowBuffer.size() >= this.overflowBufferSize) {
+          logger.warn("USI command overflow buffer is full. Dropping command.");
+          return CompletableFuture.completedFuture(QueueOfferResult.dropped());
+        }
+        this.overflowBuffer.add(pending);
+        return pending.result;
+      }
+      this.offering = true;
+    }
+    drain(pending);
+    return pending.result;
+  }
+
+  /**
+   * Offers the passed command and all parked commands one after another.
+   *
+   * <p>Only one offer is in flight at any time. The loop continues asynchronously once the stream
+   * stops applying backpressure.
+   *
+   * @param first The first command to offer.
+   */
+  private void drain(PendingCommand first) {
+    PendingCommand current = first;
+    while (current != null) {
+      final PendingCommand offered = current;
+      final CompletableFuture<QueueOfferResult> result =
+          this.queue.offer(offered.command).toCompletableFuture();
+      if (!result.isDone()) {
+        result.whenComplete(
+            (offerResult, ex) -> {
+              complete(offered, offerResult, ex);
+              drain(next());
+            });
+        return;
+      }
+      result.whenComplete((offerResult, ex) -> complete(offered, offerResult, ex));
+      current = next();
+    }
+  }
+
+  private static void complete(PendingCommand pending, QueueOfferResult result, Throwable ex) {
+    if (ex != null) {
+      pending.result.completeExceptionally(ex);
+    } else {
+      pending.result.complete(result);
+    }
+  }
+
+  /** @return the next parked command or null if the overflow buffer is empty. */
+  private synchronized PendingCommand next() {
+    final PendingCommand next = this.overflowBuffer.poll();
+    if (next == null) {
+      this.offering = false;
+    }
+    return next;
+  }
+
+  /** @return the number of commands that were offered but not accepted or dropped yet. */
+  public int getDepth() {
+    return this.depth.get();
+  }
+
+  /** @return the underlying source queue of the USI scheduler flow. */
+  public SourceQueueWithComplete<SchedulerCommand> getSourceQueue() {
+    return this.queue;
+  }
+}
@@ -10,20 +10,17 @@ import com.mesosphere.usi.core.models.faultdomain.DomainFilter;
 import com.mesosphere.usi.core.models.faultdomain.HomeRegionFilter$;
 import com.mesosphere.usi.core.models.resources.ScalarRequirement;
 import com.mesosphere.usi.core.models.template.FetchUri;
-import com.mesosphere.usi.core.models.template.RunTemplate;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
-import jenkins.model.Jenkins;
-import org.checkerframework.checker.nullness.qual.NonNull;
 import org.jenkinsci.plugins.mesos.MesosAgentSpecTemplate.ContainerInfo;
+import org.jenkinsci.plugins.mesos.api.RunTemplateFactory.ContainerInfoTaskInfoBuilder;
 import scala.Option;
 
 /**
@@ -44,12 +41,12 @@ public class LaunchCommandBuilder {
     Windows
   }
 
+  // The command templates end before the JNLP secret and URL which are set per agent by
+  // LaunchPrototype.
   private static final String LINUX_AGENT_COMMAND_TEMPLATE =
-      "java -DHUDSON_HOME=jenkins -server -Xmx%dm %s -jar ${MESOS_SANDBOX-.}/agent.jar %s %s -jnlpUrl %s";
+      "java -DHUDSON_HOME=jenkins -server -Xmx%dm %s -jar ${MESOS_SANDBOX-.}/agent.jar %s";
   private static final String WINDOWS_AGENT_COMMAND_TEMPLATE =
-      "java -DHUDSON_HOME=jenkins -server -Xmx%dm %s -jar %%MESOS_SANDBOX%%/agent.jar %s %s -jnlpUrl %s";
-
-  private static final String JNLP_SECRET_FORMAT = "-secret %s";
+      "java -DHUDSON_HOME=jenkins -server -Xmx%dm %s -jar %%MESOS_SANDBOX%%/agent.jar %s";
 
   private PodId id = null;
   private ScalarRequirement cpus = null;
@@ -145,21 +142,34 @@ public class LaunchCommandBuilder {
   }
 
   public LaunchPod build() throws MalformedURLException, URISyntaxException {
-    final RunTemplate runTemplate =
-        RunTemplateFactory.newRunTemplate(
-            this.id.value(),
-            Arrays.asList(this.cpus, this.memory, this.disk),
-            this.buildCommand(),
-            this.role,
-            this.buildFetchUris(),
-            this.containerInfo);
-
-    return LaunchPod.create(
-        this.id, runTemplate, this.domainInfoFilter, buildAgentAttributeFilters());
+    return buildPrototype().newLaunchCommand(this.id.value());
   }
 
-  /** @return the agent shell command for the Mesos task. */
-  private String buildCommand() throws MalformedURLException {
+  /**
+   * Builds everything of the launch command that does not depend on the agent name.
+   *
+   * @return a prototype that creates launch commands for agents with the configured spec.
+   * @throws MalformedURLException if the agent jar URL is not well formed.
+   * @throws URISyntaxException if the agent jar URL cannot be converted into a proper URI.
+   */
+  public LaunchPrototype buildPrototype() throws MalformedURLException, URISyntaxException {
+    final boolean hostnameRequired =
+        this.containerInfo.map(ContainerInfoTaskInfoBuilder::requiresHostname).orElse(false);
+    return new LaunchPrototype(
+        Arrays.asList(this.cpus, this.memory, this.disk),
+        this.buildCommandPrefix(),
+        this.role,
+        this.buildFetchUris(),
+        this.containerInfo.map(ContainerInfo::getDockerImage),
+        this.containerInfo.map(ContainerInfoTaskInfoBuilder::buildContainerInfo),
+        hostnameRequired,
+        this.domainInfoFilter,
+        buildAgentAttributeFilters(),
+        this.jenkinsMaster);
+  }
+
+  /** @return the agent shell command for the Mesos task up to the JNLP secret. */
+  private String buildCommandPrefix() {
     final String template;
     switch (this.agentCommandStyle) {
       case Linux:
@@ -172,37 +182,15 @@ public class LaunchCommandBuilder {
         template = LINUX_AGENT_COMMAND_TEMPLATE;
         break;
     }
-    return String.format(
-        template,
-        this.xmx,
-        this.jvmArgString,
-        this.jnlpArgString,
-        buildJnlpSecret(),
-        buildJnlpUrl());
+    return String.format(template, this.xmx, this.jvmArgString, this.jnlpArgString);
   }
 
   @VisibleForTesting
   String buildJnlpSecret() {
-    String jnlpSecret = "";
-    if (getJenkins().isUseSecurity()) {
-      jnlpSecret =
-          String.format(
-              JNLP_SECRET_FORMAT,
-              jenkins.slaves.JnlpSlaveAgentProtocol.SLAVE_SECRET.mac(this.id.value()));
-    }
-    return jnlpSecret;
+    return LaunchPrototype.buildJnlpSecret(this.id.value());
   }
 
-  @NonNull
-  private static Jenkins getJenkins() {
-    Jenkins jenkins = Jenkins.getInstanceOrNull();
-    if (jenkins == null) {
-      throw new IllegalStateException("Jenkins is null");
-    }
-    return jenkins;
-  }
-
-  private Iterable<AgentFilter> buildAgentAttributeFilters() {
+  private List<AgentFilter> buildAgentAttributeFilters() {
     if (agentAttributeString.isEmpty()) {
       return Collections.emptyList();
     } else {
@@ -217,12 +205,6 @@ public class LaunchCommandBuilder {
     }
   }
 
-  /** @return the Jnlp url for the agent: http://[master]/computer/[slaveName]/slave-agent.jnlp */
-  private URL buildJnlpUrl() throws MalformedURLException {
-    final String path = Paths.get("computer", this.id.value(), "slave-agent.jnlp").toString();
-    return new URL(this.jenkinsMaster, path);
-  }
-
   /** @return the {@link FetchUri} for the Jenkins agent jar file. */
   private List<FetchUri> buildFetchUris() throws MalformedURLException, URISyntaxException {
     final URI uri = new URL(this.jenkinsMaster, AGENT_JAR_URI_SUFFIX).toURI();
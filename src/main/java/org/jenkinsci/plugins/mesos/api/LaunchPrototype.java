@@ -0,0 +1,161 @@
+package org.jenkinsci.plugins.mesos.api;
+
+import com.google.common.collect.ImmutableList;
+import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.TaskBuilder;
+import com.mesosphere.usi.core.models.commands.LaunchPod;
+import com.mesosphere.usi.core.models.constraints.AgentFilter;
+import com.mesosphere.usi.core.models.faultdomain.DomainFilter;
+import com.mesosphere.usi.core.models.resources.ResourceRequirement;
+import com.mesosphere.usi.core.models.template.FetchUri;
+import com.mesosphere.usi.core.models.template.LegacyLaunchRunTemplate;
+import com.mesosphere.usi.core.models.template.SimpleRunTemplateFactory.DockerEntrypoint$;
+import com.mesosphere.usi.core.models.template.SimpleRunTemplateFactory.Shell;
+import com.mesosphere.usi.core.models.template.SimpleRunTemplateFactory.SimpleTaskInfoBuilder$;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import jenkins.model.Jenkins;
+import org.apache.mesos.v1.Protos.ContainerInfo;
+import org.jenkinsci.plugins.mesos.api.RunTemplateFactory.ContainerInfoTaskInfoBuilder;
+
+/**
+ * An immutable, precompiled {@link LaunchPod} for one agent spec.
+ *
+ * <p>Everything that does not depend on the agent name, ie resources, fetch URIs, agent filters,
+ * the command prefix and the container info, is built once by {@link LaunchCommandBuilder}. Each
+ * launch only patches in the pod id, the JNLP URL and the JNLP secret.
+ */
+public class LaunchPrototype {
+
+  private static final String COMMAND_FORMAT = "%s %s -jnlpUrl %s";
+  private static final String JNLP_SECRET_FORMAT = "-secret %s";
+
+  private final List<ResourceRequirement> requirements;
+  private final String commandPrefix;
+  private final String role;
+  private final List<FetchUri> fetchUris;
+  private final Optional<String> dockerImage;
+  private final Optional<ContainerInfo> containerInfo;
+  private final boolean hostnameRequired;
+  private final DomainFilter domainFilter;
+  private final List<AgentFilter> agentFilters;
+  private final URL jenkinsUrl;
+
+  LaunchPrototype(
+      List<ResourceRequirement> requirements,
+      String commandPrefix,
+      String role,
+      List<FetchUri> fetchUris,
+      Optional<String> dockerImage,
+      Optional<ContainerInfo> containerInfo,
+      boolean hostnameRequired,
+      DomainFilter domainFilter,
+      List<AgentFilter> agentFilters,
+      URL jenkinsUrl) {
+    this.requirements = Collections.unmodifiableList(new ArrayList<>(requirements));
+    this.commandPrefix = commandPrefix;
+    this.role = role;
+    this.fetchUris = ImmutableList.copyOf(fetchUris);
+    this.dockerImage = dockerImage;
+    this.containerInfo = containerInfo;
+    this.hostnameRequired = hostnameRequired;
+    this.domainFilter = domainFilter;
+    this.agentFilters = ImmutableList.copyOf(agentFilters);
+    this.jenkinsUrl = jenkinsUrl;
+  }
+
+  /**
+   * Creates the launch command for a new agent from this prototype.
+   *
+   * @param name The name of the agent, ie the pod id.
+   * @return a LaunchPod command to be passed to USI.
+   * @throws MalformedURLException if the JNLP URL cannot be built.
+   */
+  public LaunchPod newLaunchCommand(String name) throws MalformedURLException {
+    return LaunchPod.create(
+        new PodId(name),
+        new LegacyLaunchRunTemplate(this.role, newTaskBuilder(name)),
+        this.domainFilter,
+        this.agentFilters);
+  }
+
+  /**
+   * @param name The name of the agent, ie the pod id.
+   * @return the task builder that turns a matched offer into the Mesos task of the agent.
+   * @throws MalformedURLException if the JNLP URL cannot be built.
+   */
+  TaskBuilder newTaskBuilder(String name) throws MalformedURLException {
+    final String command =
+        String.format(
+            COMMAND_FORMAT, this.commandPrefix, buildJnlpSecret(name), buildJnlpUrl(name));
+
+    if (this.containerInfo.isPresent()) {
+      final TaskBuilder taskBuilder =
+          SimpleTaskInfoBuilder$.MODULE$.create(
+              this.requirements,
+              DockerEntrypoint$.MODULE$.create(command),
+              this.fetchUris,
+              this.dockerImage);
+      final ContainerInfo container =
+          this.hostnameRequired
+              ? this.containerInfo.get().toBuilder().setHostname(name).build()
+              : this.containerInfo.get();
+      return new ContainerInfoTaskInfoBuilder(taskBuilder, container);
+    } else {
+      return SimpleTaskInfoBuilder$.MODULE$.create(
+          this.requirements, new Shell(command), this.fetchUris, Optional.empty());
+    }
+  }
+
+  /** @return the resources of the agent's task. */
+  public List<ResourceRequirement> getRequirements() {
+    return this.requirements;
+  }
+
+  /** @return the Mesos role of the agent's task. */
+  public String getRole() {
+    return this.role;
+  }
+
+  /** @return the filter for the fault domain of the Mesos agent. */
+  public DomainFilter getDomainFilter() {
+    return this.domainFilter;
+  }
+
+  /** @return the filters for the attributes of the Mesos agent. */
+  public List<AgentFilter> getAgentFilters() {
+    return this.agentFilters;
+  }
+
+  /** @return the command line up to the JNLP secret. */
+  String getCommandPrefix() {
+    return this.commandPrefix;
+  }
+
+  /**
+   * @param name The name of the agent.
+   * @return the JNLP secret argument or an empty string if Jenkins is not secured.
+   */
+  static String buildJnlpSecret(String name) {
+    final Jenkins instance = Jenkins.getInstanceOrNull();
+    if (instance == null) {
+      throw new IllegalStateException("Jenkins is null");
+    }
+    if (instance.isUseSecurity()) {
+      return String.format(
+          JNLP_SECRET_FORMAT, jenkins.slaves.JnlpSlaveAgentProtocol.SLAVE_SECRET.mac(name));
+    }
+    return "";
+  }
+
+  /** @return the Jnlp url for the agent: http://[master]/computer/[slaveName]/slave-agent.jnlp */
+  private URL buildJnlpUrl(String name) throws MalformedURLException {
+    final String path = Paths.get("computer", name, "slave-agent.jnlp").toString();
+    return new URL(this.jenkinsUrl, path);
+  }
+}
@@ -0,0 +1,210 @@
+package org.jenkinsci.plugins.mesos.api;
+
+import akka.Done;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Source;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.mesosphere.mesos.client.MesosClient;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import org.apache.mesos.v1.scheduler.Protos.Call;
+import org.jenkinsci.plugins.mesos.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.Option;
+import scala.compat.java8.FutureConverters;
+
+/**
+ * Suppresses Mesos offers while the framework has no pending agents and revives them as soon as an
+ * agent is enqueued.
+ *
+ * <p>Offers are suppressed once no agent was pending for the grace period. If offers have to be
+ * revived before the grace period passed again the grace doubles up to its maximum so that a bursty
+ * workload does not flip between suppress and revive. The grace is reset once offers stayed
+ * suppressed for longer than the maximum.
+ *
+ * <p>The calls, eg {@code mesos.framework.<name>.offers.suppressed}, are counted in meters.
+ * Suppressors of frameworks with the same name share the meters. The {@code suppressing} gauge is
+ * replaced by the latest suppressor and only removed by the suppressor that registered it.
+ */
+public class OfferSuppressor {
+
+  private static final Logger logger = LoggerFactory.getLogger(OfferSuppressor.class);
+
+  /** The calls that control the offers of the framework. */
+  public interface OfferCalls {
+    void suppress();
+
+    void revive();
+  }
+
+  private final Duration minGrace;
+  private final LongSupplier nanoTime;
+
+  // Guarded by this.
+  private Duration maxGrace;
+  private OfferCalls calls = null;
+  private boolean suppressed = false;
+  private Duration grace;
+  private long idleSinceNanos = -1;
+  private long suppressedAtNanos = 0;
+
+  // Metrics
+  private final MetricRegistry registry;
+  private final Meter suppressMeter;
+  private final Meter reviveMeter;
+  private final Gauge<Boolean> suppressingGauge = this::isSuppressed;
+
+  /**
+   * Constructs a new offer suppressor.
+   *
+   * @param minGrace The initial time without pending agents before offers are suppressed.
+   * @param maxGrace The upper bound of the grace.
+   * @param registry The registry for the offer metrics.
+   * @param frameworkName The framework name used as a prefix for the offer metrics.
+   */
+  public OfferSuppressor(
+      Duration minGrace, Duration maxGrace, MetricRegistry registry, String frameworkName) {
+    this(minGrace, maxGrace, registry, frameworkName, System::nanoTime);
+  }
+
+  /**
+   * @param nanoTime The clock, eg {@link System#nanoTime()}.
+   * @see #OfferSuppressor(Duration, Duration, MetricRegistry, String)
+   */
+  public OfferSuppressor(
+      Duration minGrace,
+      Duration maxGrace,
+      MetricRegistry registry,
+      String frameworkName,
+      LongSupplier nanoTime) {
+    this.minGrace = minGrace;
+    this.maxGrace = (maxGrace.compareTo(minGrace) < 0) ? minGrace : maxGrace;
+    this.grace = minGrace;
+    this.nanoTime = nanoTime;
+
+    final String prefix =
+        String.format("mesos.framework.%s.offers", Metrics.sanitize(frameworkName));
+    this.registry = registry;
+    this.suppressMeter = registry.meter(prefix + ".suppressed");
+    this.reviveMeter = registry.meter(prefix + ".revived");
+    registry.remove(prefix + ".suppressing");
+    registry.register(prefix + ".suppressing", this.suppressingGauge);
+  }
+
+  /** Removes the gauge of this suppressor from the registry unless another one replaced it. */
+  public void close() {
+    this.registry.removeMatching((name, metric) -> metric == this.suppressingGauge);
+  }
+
+  /**
+   * Constructs the offer calls of a connected Mesos client. The calls apply to all roles of the
+   * framework.
+   *
+   * @param client The connected client.
+   * @param materializer The materializer that runs the calls.
+   * @return the offer calls of the client.
+   */
+  public static OfferCalls callsOf(MesosClient client, Materializer materializer) {
+    return new OfferCalls() {
+      @Override
+      public void suppress() {
+        send(client.calls().newSuppress(Option.empty()));
+      }
+
+      @Override
+      public void revive() {
+        send(client.calls().newRevive(Option.empty()));
+      }
+
+      private void send(Call call) {
+        FutureConverters.toJava(Source.single(call).runWith(client.mesosSink(), materializer))
+            .whenComplete(
+                (Done done, Throwable ex) -> {
+                  if (ex != null) {
+                    logger.warn("Could not send {} call to Mesos", call.getType(), ex);
+                  }
+                });
+      }
+    };
+  }
+
+  /**
+   * Sets the calls of a new Mesos subscription. A new subscription receives offers.
+   *
+   * @param calls The offer calls of the connected client.
+   */
+  public synchronized void connected(OfferCalls calls) {
+    this.calls = calls;
+    this.suppressed = false;
+    this.idleSinceNanos = -1;
+  }
+
+  /**
+   * Updates the demand for offers. It is called when agents are enqueued and periodically with the
+   * number of pending agents.
+   *
+   * @param pendingAgents The number of agents that wait for an offer.
+   */
+  public synchronized void update(long pendingAgents) {
+    final long now = this.nanoTime.getAsLong();
+    if (pendingAgents > 0) {
+      this.idleSinceNanos = -1;
+      if (this.suppressed) {
+        revive(now);
+      }
+      return;
+    }
+
+    if (this.idleSinceNanos < 0) {
+      this.idleSinceNanos = now;
+    }
+    if (!this.suppressed
+        && this.calls != null
+        && now - this.idleSinceNanos >= this.grace.toNanos()) {
+      logger.info("Suppressing offers after {} without pending agents", this.grace);
+      this.calls.suppress();
+      this.suppressMeter.mark();
+      this.suppressed = true;
+      this.suppressedAtNanos = now;
+    }
+  }
+
+  private void revive(long now) {
+    final long suppressedNanos = now - this.suppressedAtNanos;
+    if (suppressedNanos < this.grace.toNanos()) {
+      final Duration doubled = this.grace.multipliedBy(2);
+      this.grace = (doubled.compareTo(this.maxGrace) > 0) ? this.maxGrace : doubled;
+    } else if (suppressedNanos > this.maxGrace.toNanos()) {
+      this.grace = this.minGrace;
+    }
+    logger.info("Reviving offers after {} ms", Duration.ofNanos(suppressedNanos).toMillis());
+    this.calls.revive();
+    this.reviveMeter.mark();
+    this.suppressed = false;
+  }
+
+  /**
+   * Overrides the upper bound of the grace, eg with the decline offer duration of a 1.x cloud.
+   *
+   * @param maxGrace The new upper bound. It is at least the initial grace.
+   */
+  public synchronized void setMaxGrace(Duration maxGrace) {
+    this.maxGrace = (maxGrace.compareTo(this.minGrace) < 0) ? this.minGrace : maxGrace;
+    if (this.grace.compareTo(this.maxGrace) > 0) {
+      this.grace = this.maxGrace;
+    }
+  }
+
+  /** @return whether offers are currently suppressed. */
+  public synchronized boolean isSuppressed() {
+    return this.suppressed;
+  }
+
+  /** @return the current time without pending agents before offers are suppressed. */
+  public synchronized Duration getGrace() {
+    return this.grace;
+  }
+}
@@ -6,15 +6,8 @@ import static org.apache.mesos.v1.Protos.Image.Type.DOCKER;
 import com.mesosphere.usi.core.models.TaskBuilder;
 import com.mesosphere.usi.core.models.TaskName;
 import com.mesosphere.usi.core.models.resources.ResourceRequirement;
-import com.mesosphere.usi.core.models.template.FetchUri;
-import com.mesosphere.usi.core.models.template.LegacyLaunchRunTemplate;
 import com.mesosphere.usi.core.models.template.RunTemplate;
-import com.mesosphere.usi.core.models.template.SimpleRunTemplateFactory.DockerEntrypoint$;
-import com.mesosphere.usi.core.models.template.SimpleRunTemplateFactory.Shell;
 import com.mesosphere.usi.core.models.template.SimpleRunTemplateFactory.SimpleTaskInfoBuilder;
-import com.mesosphere.usi.core.models.template.SimpleRunTemplateFactory.SimpleTaskInfoBuilder$;
-import java.util.List;
-import java.util.Optional;
 import org.apache.mesos.v1.Protos.ContainerInfo;
 import org.apache.mesos.v1.Protos.ContainerInfo.DockerInfo;
 import org.apache.mesos.v1.Protos.ContainerInfo.DockerInfo.Network;
@@ -30,50 +23,12 @@ import org.slf4j.LoggerFactory;
 import scala.collection.immutable.Map;
 import scala.collection.immutable.Seq;
 
-/** The builder is used by {@link LaunchCommandBuilder} to construct a USI {@link RunTemplate}. */
+/**
+ * Holds the {@link ContainerInfoTaskInfoBuilder} that {@link LaunchPrototype} uses to add container
+ * information to the USI {@link RunTemplate} of an agent.
+ */
 public class RunTemplateFactory {
 
-  /**
-   * Constructs a {@link RunTemplate} based on the passed parameters.
-   *
-   * <p>The template uses either the {@link SimpleTaskInfoBuilder} or a custom {@link
-   * ContainerInfoTaskInfoBuilder}.
-   *
-   * @param agentName The name of the Mesos task/Jenkins agent, {@link
-   *     LaunchCommandBuilder#withName(String)}.
-   * @param requirements The resource requirements for a Jenkins agent.
-   * @param shellCommand The shell command built by {@link LaunchCommandBuilder}.
-   * @param role The Mesos role the Jenkins agent will assume.
-   * @param fetchUris Artifacts that are fetched, eg the Jenkins agent.jar.
-   * @param containerInfo Optional information for a Docker or Mesos container.
-   * @return the new USI run template.
-   */
-  static RunTemplate newRunTemplate(
-      String agentName,
-      List<ResourceRequirement> requirements,
-      String shellCommand,
-      String role,
-      List<FetchUri> fetchUris,
-      Optional<MesosAgentSpecTemplate.ContainerInfo> containerInfo) {
-
-    // If a container info is set we assume its Docker image defines an entrypoint.
-    TaskBuilder taskBuilder;
-    if (containerInfo.isPresent()) {
-      taskBuilder =
-          SimpleTaskInfoBuilder$.MODULE$.create(
-              requirements,
-              DockerEntrypoint$.MODULE$.create(shellCommand),
-              fetchUris,
-              containerInfo.map(MesosAgentSpecTemplate.ContainerInfo::getDockerImage));
-      taskBuilder = new ContainerInfoTaskInfoBuilder(agentName, taskBuilder, containerInfo.get());
-    } else {
-      taskBuilder =
-          SimpleTaskInfoBuilder$.MODULE$.create(
-              requirements, new Shell(shellCommand), fetchUris, Optional.empty());
-    }
-    return new LegacyLaunchRunTemplate(role, taskBuilder);
-  }
-
   /**
    * This is a small USI {@link TaskBuilder} that wraps the {@link SimpleTaskInfoBuilder} and adds
    * {@link org.apache.mesos.v1.Protos.ContainerInfo} to the Mesos task info if defined.
@@ -88,24 +43,15 @@ public class RunTemplateFactory {
     public static final Network DEFAULT_NETWORKING = Network.BRIDGE;
 
     final TaskBuilder simpleTaskInfoBuilder;
-    final MesosAgentSpecTemplate.ContainerInfo containerInfo;
-    final String agentName;
+    final ContainerInfo containerInfo;
 
     /**
-     * Constructs a new {@link TaskBuilder}.
-     *
-     * <p>This is basically a port of JenkinsScheduler.getContainerInfoBuilder from v1.1 of the
-     * plugin.
+     * Constructs a new {@link TaskBuilder} with a prebuilt container info.
      *
-     * @param agentName The name of the Jenkins agent.
      * @param taskInfoBuilder The original {@link SimpleTaskInfoBuilder}.
-     * @param containerInfo The additional container information.
+     * @param containerInfo The Mesos container info that is set on each task.
      */
-    public ContainerInfoTaskInfoBuilder(
-        String agentName,
-        TaskBuilder taskInfoBuilder,
-        MesosAgentSpecTemplate.ContainerInfo containerInfo) {
-      this.agentName = agentName;
+    public ContainerInfoTaskInfoBuilder(TaskBuilder taskInfoBuilder, ContainerInfo containerInfo) {
       this.simpleTaskInfoBuilder = taskInfoBuilder;
       this.containerInfo = containerInfo;
     }
@@ -122,57 +68,64 @@ public class RunTemplateFactory {
         Seq<Resource> taskResources,
         Map<TaskName, Seq<Resource>> peerTaskResources) {
       this.simpleTaskInfoBuilder.buildTask(builder, matchedOffer, taskResources, peerTaskResources);
-      this.getContainerInfoBuilder(matchedOffer, builder);
+      builder.setContainer(this.containerInfo);
+    }
+
+    /**
+     * Checks whether the container info of an agent depends on the agent name.
+     *
+     * @param containerInfo The container information of the agent spec.
+     * @return true if the hostname of the container is set to the agent name.
+     */
+    static boolean requiresHostname(MesosAgentSpecTemplate.ContainerInfo containerInfo) {
+      //  https://github.com/jenkinsci/mesos-plugin/issues/109
+      return ContainerInfo.Type.valueOf(containerInfo.getType()) == ContainerInfo.Type.DOCKER
+          && containerInfo.getNetworking() != Network.HOST;
     }
 
     /**
      * This is the original v1.1 JenkinsScheduler.getContainerInfoBuilder.
      *
-     * @param offer The Mesos offer.
-     * @param agentName The name of the Jenkins agent
-     * @param taskBuilder The Mesos task info builder.
+     * <p>The hostname is not set since it differs per agent, see {@link
+     * #requiresHostname(MesosAgentSpecTemplate.ContainerInfo)}.
+     *
+     * @param containerInfo The container information of the agent spec.
+     * @return the Mesos container info.
      */
-    private void getContainerInfoBuilder(Offer offer, TaskInfo.Builder taskBuilder) {
-      ContainerInfo.Type containerType = ContainerInfo.Type.valueOf(this.containerInfo.getType());
+    static ContainerInfo buildContainerInfo(MesosAgentSpecTemplate.ContainerInfo containerInfo) {
+      ContainerInfo.Type containerType = ContainerInfo.Type.valueOf(containerInfo.getType());
 
       ContainerInfo.Builder containerInfoBuilder =
           ContainerInfo.newBuilder().setType(containerType);
 
       switch (containerType) {
         case DOCKER:
-          logger.info("Launching in Docker Mode:" + this.containerInfo.getDockerImage());
+          logger.info("Launching in Docker Mode:" + containerInfo.getDockerImage());
           DockerInfo.Builder dockerInfoBuilder =
               DockerInfo.newBuilder()
-                  .setImage(this.containerInfo.getDockerImage())
-                  .setPrivileged(this.containerInfo.getDockerPrivilegedMode())
-                  .setForcePullImage(this.containerInfo.getDockerForcePullImage());
-
-          dockerInfoBuilder.setNetwork(this.containerInfo.getNetworking());
+                  .setImage(containerInfo.getDockerImage())
+                  .setPrivileged(containerInfo.getDockerPrivilegedMode())
+                  .setForcePullImage(containerInfo.getDockerForcePullImage());
 
-          //  https://github.com/jenkinsci/mesos-plugin/issues/109
-          if (dockerInfoBuilder.getNetwork() != Network.HOST) {
-            containerInfoBuilder.setHostname(agentName);
-          }
+          dockerInfoBuilder.setNetwork(containerInfo.getNetworking());
 
           containerInfoBuilder.setDocker(dockerInfoBuilder);
           break;
         case MESOS:
-          logger.info("Launching in UCR Mode:" + this.containerInfo.getDockerImage());
+          logger.info("Launching in UCR Mode:" + containerInfo.getDockerImage());
 
           Image dockerImage =
               Image.newBuilder()
                   .setType(DOCKER)
                   .setDocker(
-                      Image.Docker.newBuilder()
-                          .setName(this.containerInfo.getDockerImage())
-                          .build())
+                      Image.Docker.newBuilder().setName(containerInfo.getDockerImage()).build())
                   .build();
 
           containerInfoBuilder
               .setType(MESOS)
               .setMesos(ContainerInfo.MesosInfo.newBuilder().setImage(dockerImage).build());
 
-          if (this.containerInfo.getIsDind()) {
+          if (containerInfo.getIsDind()) {
             containerInfoBuilder.addVolumes(
                 Volume.newBuilder()
                     .setContainerPath("/var/lib/docker")
@@ -182,10 +135,10 @@ public class RunTemplateFactory {
           break;
 
         default:
-          logger.warn("Unknown container type:" + this.containerInfo.getType());
+          logger.warn("Unknown container type:" + containerInfo.getType());
       }
 
-      for (MesosAgentSpecTemplate.Volume volume : this.containerInfo.getVolumesOrEmpty()) {
+      for (MesosAgentSpecTemplate.Volume volume : containerInfo.getVolumesOrEmpty()) {
         logger.info("Adding volume '" + volume.getContainerPath() + "'");
         Volume.Builder volumeBuilder =
             Volume.newBuilder()
@@ -197,7 +150,7 @@ public class RunTemplateFactory {
         containerInfoBuilder.addVolumes(volumeBuilder.build());
       }
 
-      taskBuilder.setContainer(containerInfoBuilder.build());
+      return containerInfoBuilder.build();
     }
   }
 }
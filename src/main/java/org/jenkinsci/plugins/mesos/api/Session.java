@@ -6,6 +6,7 @@ import akka.actor.ActorSystem;
 import akka.japi.Pair;
 import akka.stream.ActorMaterializer;
 import akka.stream.OverflowStrategy;
+import akka.stream.QueueOfferResult;
 import akka.stream.javadsl.Flow;
 import akka.stream.javadsl.Keep;
 import akka.stream.javadsl.RestartFlow;
@@ -13,6 +14,7 @@ import akka.stream.javadsl.RestartSource;
 import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
 import akka.stream.javadsl.SourceQueueWithComplete;
+import com.codahale.metrics.MetricRegistry;
 import com.mesosphere.mesos.client.CredentialsProvider;
 import com.mesosphere.mesos.client.MesosClient;
 import com.mesosphere.mesos.client.MesosClient$;
@@ -20,16 +22,22 @@ import com.mesosphere.mesos.conf.MesosClientSettings;
 import com.mesosphere.usi.core.SchedulerFactory;
 import com.mesosphere.usi.core.conf.SchedulerSettings;
 import com.mesosphere.usi.core.japi.Scheduler;
+import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.PodRecordUpdatedEvent;
+import com.mesosphere.usi.core.models.PodStatusUpdatedEvent;
 import com.mesosphere.usi.core.models.StateEvent;
 import com.mesosphere.usi.core.models.StateEventOrSnapshot;
 import com.mesosphere.usi.core.models.commands.SchedulerCommand;
 import com.mesosphere.usi.repository.PodRecordRepository;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import javax.annotation.Nonnull;
 import org.apache.mesos.v1.Protos;
 import org.apache.mesos.v1.Protos.FrameworkInfo;
@@ -50,7 +58,10 @@ public class Session {
   private static final Logger logger = LoggerFactory.getLogger(Session.class);
 
   // Interface to USI.
-  @Nonnull private final SourceQueueWithComplete<SchedulerCommand> commands;
+  @Nonnull private final CommandQueue commands;
+
+  // Completes once all events of the scheduler flow were handled.
+  @Nonnull private final CompletionStage<Done> completion;
 
   public static Session create(
       FrameworkInfo frameworkInfo,
@@ -59,51 +70,105 @@ public class Session {
       SchedulerSettings schedulerSettings,
       PodRecordRepository repository,
       Settings operationalSettings,
+      OfferSuppressor offerSuppressor,
       Consumer<StateEventOrSnapshot> eventHandler,
       BiFunction<Done, Throwable, Done> terminationHandler,
       ExecutionContext context,
       ActorSystem system,
       ActorMaterializer materializer) {
     Flow<SchedulerCommand, StateEvent, NotUsed> schedulerFlow =
-        RestartFlow.withBackoff(
+        restartingSchedulerFlow(
             Duration.ofSeconds(3),
             Duration.ofSeconds(30),
-            0.2,
             20,
-            () -> {
-              return connectClient(
-                      frameworkInfo,
-                      operationalSettings,
-                      clientSettings,
-                      provider,
-                      system,
-                      materializer)
-                  .thenCompose(
-                      client -> {
-                        final SchedulerFactory schedulerFactory =
-                            SchedulerFactory.create(
-                                client,
-                                repository,
-                                schedulerSettings,
-                                Metrics.getInstance(frameworkInfo.getName()),
-                                context);
-                        return Scheduler.asFlow(schedulerFactory);
-                      })
-                  .get() // TODO: avoid blocking.
-                  .getFlow();
-            });
+            () ->
+                connectClient(
+                        frameworkInfo,
+                        operationalSettings,
+                        clientSettings,
+                        provider,
+                        system,
+                        materializer)
+                    .thenCompose(
+                        client -> {
+                          offerSuppressor.connected(OfferSuppressor.callsOf(client, materializer));
+                          final SchedulerFactory schedulerFactory =
+                              SchedulerFactory.create(
+                                  client,
+                                  repository,
+                                  schedulerSettings,
+                                  Metrics.getInstance(frameworkInfo.getName()),
+                                  context);
+                          return Scheduler.asFlow(schedulerFactory);
+                        })
+                    .thenApply(scheduler -> scheduler.getFlow()));
 
     Pair<SourceQueueWithComplete<SchedulerCommand>, CompletionStage<Done>> pair =
         runScheduler(operationalSettings, schedulerFlow, eventHandler, materializer);
 
-    // TODO: handle termination
-    // pair.second().handle()
-
-    return new Session(pair.first());
+    return new Session(
+        new CommandQueue(
+            pair.first(),
+            operationalSettings.getCommandQueueOverflowMode(),
+            operationalSettings.getCommandQueueOverflowBufferSize(),
+            jenkins.metrics.api.Metrics.metricRegistry(),
+            frameworkInfo.getName()),
+        pair.second());
   }
 
+  /**
+   * Constructs a session that drops new commands when the queue is full.
+   *
+   * @param commands A source queue created with {@link OverflowStrategy#dropNew()}.
+   */
   public Session(SourceQueueWithComplete<SchedulerCommand> commands) {
+    this(
+        new CommandQueue(
+            commands, CommandQueue.OverflowMode.DROP_NEW, 0, new MetricRegistry(), "session"));
+  }
+
+  public Session(CommandQueue commands) {
+    this(commands, commands.getSourceQueue().watchCompletion());
+  }
+
+  /**
+   * @param commands The queue of commands to USI.
+   * @param completion Completes once all events of the scheduler flow were handled.
+   */
+  public Session(CommandQueue commands, CompletionStage<Done> completion) {
     this.commands = commands;
+    this.completion = completion;
+  }
+
+  /**
+   * Stops accepting commands. Queued commands are still passed to USI.
+   *
+   * @return a future that completes once the scheduler flow is drained.
+   */
+  public CompletionStage<Done> close() {
+    this.commands.getSourceQueue().complete();
+    return this.completion;
+  }
+
+  /**
+   * Constructs a scheduler flow that reconnects to Mesos with a backoff when it fails.
+   *
+   * <p>The flow is materialized from the future connection so that no dispatcher thread waits while
+   * the client connects or backs off.
+   *
+   * @param minBackoff The initial backoff between two connection attempts.
+   * @param maxBackoff The maximum backoff between two connection attempts.
+   * @param maxRestarts The maximum number of restarts.
+   * @param connect Connects to Mesos and provides the USI scheduler flow.
+   * @return the restarting scheduler flow.
+   */
+  static Flow<SchedulerCommand, StateEvent, NotUsed> restartingSchedulerFlow(
+      Duration minBackoff,
+      Duration maxBackoff,
+      int maxRestarts,
+      Supplier<CompletionStage<Flow<SchedulerCommand, StateEvent, NotUsed>>> connect) {
+    return RestartFlow.withBackoff(
+        minBackoff, maxBackoff, 0.2, maxRestarts, () -> Flow.completionStageFlow(connect.get()));
   }
 
   /** Establish a connection to Mesos via the v1 client. */
@@ -137,6 +202,10 @@ public class Session {
    * Constructs a queue of {@link SchedulerCommand}. All state events are processed by {@link
    * MesosApi#updateState(StateEventOrSnapshot)}.
    *
+   * <p>The queue drops new commands or backpressures when its buffer is full depending on {@link
+   * Settings#getCommandQueueOverflowMode()}. Events are handled by {@link
+   * Settings#getEventHandlerParallelism()} workers.
+   *
    * @param schedulerFlow The scheduler flow from commands to events provided by USI.
    * @param materializer The {@link ActorMaterializer} used for the source queue.
    * @return A running source queue.
@@ -146,14 +215,99 @@ public class Session {
       Flow<SchedulerCommand, StateEvent, NotUsed> schedulerFlow,
       Consumer<StateEventOrSnapshot> eventHandler,
       ActorMaterializer materializer) {
+    final OverflowStrategy overflowStrategy =
+        (operationalSettings.getCommandQueueOverflowMode()
+                == CommandQueue.OverflowMode.BACKPRESSURE)
+            ? OverflowStrategy.backpressure()
+            : OverflowStrategy.dropNew();
     return Source.<SchedulerCommand>queue(
-            operationalSettings.getCommandQueueBufferSize(), OverflowStrategy.dropNew())
+            operationalSettings.getCommandQueueBufferSize(), overflowStrategy)
         .via(schedulerFlow)
-        .toMat(Sink.foreach(eventHandler::accept), Keep.both())
+        .toMat(
+            partitionedEventHandler(operationalSettings.getEventHandlerParallelism(), eventHandler),
+            Keep.both())
         .run(materializer);
   }
 
+  /**
+   * Constructs a sink that handles state events on parallel workers. Events are partitioned by
+   * their pod id so that the events of one pod are handled in order by the same worker. Events
+   * without a pod id are handled by the first worker.
+   *
+   * @param parallelism The number of workers.
+   * @param eventHandler The handler of each event.
+   * @return a sink that completes once all events were handled.
+   */
+  static Sink<StateEvent, CompletionStage<Done>> partitionedEventHandler(
+      int parallelism, Consumer<StateEventOrSnapshot> eventHandler) {
+    final int partitions = Math.max(1, parallelism);
+    return Flow.of(StateEvent.class)
+        .groupBy(partitions, event -> partitionOf(event, partitions))
+        .async()
+        .map(
+            event -> {
+              eventHandler.accept(event);
+              return Done.getInstance();
+            })
+        .mergeSubstreams()
+        .toMat(Sink.ignore(), Keep.right());
+  }
+
+  /**
+   * @return the worker partition of the passed event. Status and record updates of the same pod
+   *     share a partition.
+   */
+  private static int partitionOf(StateEvent event, int partitions) {
+    final PodId podId;
+    if (event instanceof PodStatusUpdatedEvent) {
+      podId = ((PodStatusUpdatedEvent) event).id();
+    } else if (event instanceof PodRecordUpdatedEvent) {
+      podId = ((PodRecordUpdatedEvent) event).id();
+    } else {
+      return 0;
+    }
+    return Math.floorMod(podId.hashCode(), partitions);
+  }
+
+  /**
+   * Offers a single command to the USI command queue.
+   *
+   * @param command The command to offer.
+   * @return the result of the offer.
+   */
+  public CompletionStage<QueueOfferResult> offer(SchedulerCommand command) {
+    return this.commands.offer(command);
+  }
+
+  /**
+   * Offers a batch of commands to the USI command queue.
+   *
+   * <p>The commands are offered one after another so that each offer waits for the previous one to
+   * be resolved, since the source queue allows only one pending offer. A batch thus still costs one
+   * queue offer per command. Batching only saves the per-agent setup around the offers. A dropped
+   * or failed offer does not stop the remaining commands of the batch.
+   *
+   * @param batch The commands to offer.
+   * @return the results of the offers in the order of the batch.
+   */
+  public List<CompletionStage<QueueOfferResult>> offerAll(List<SchedulerCommand> batch) {
+    final List<CompletionStage<QueueOfferResult>> results = new ArrayList<>(batch.size());
+    CompletionStage<?> previous = CompletableFuture.completedFuture(null);
+    for (SchedulerCommand command : batch) {
+      final CompletionStage<QueueOfferResult> result =
+          previous.handle((ignored, ex) -> command).thenCompose(this.commands::offer);
+      results.add(result);
+      previous = result;
+    }
+    return results;
+  }
+
   public SourceQueueWithComplete<SchedulerCommand> getCommands() {
+    return this.commands.getSourceQueue();
+  }
+
+  /** @return the command queue that applies the overflow mode. */
+  public CommandQueue getCommandQueue() {
     return this.commands;
   }
 }
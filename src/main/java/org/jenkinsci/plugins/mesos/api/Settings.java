@@ -18,6 +18,21 @@ public class Settings {
   private final Duration connectionMinBackoff;
   private final Duration connectionMaxBackoff;
 
+  private final CommandQueue.OverflowMode commandQueueOverflowMode;
+  private final int commandQueueOverflowBufferSize;
+
+  private final boolean adoptRunningAgents;
+
+  private final String dispatcher;
+
+  private final int eventHandlerParallelism;
+
+  private final boolean suppressOffers;
+  private final Duration offerSuppressionGrace;
+  private final Duration offerSuppressionMaxGrace;
+
+  private final Duration offerDiagnosticsInterval;
+
   /** Internal constructor */
   private Settings(
       Duration agentTimeout,
@@ -25,13 +40,31 @@ public class Settings {
       Duration failoverTimeout,
       int connectionRetries,
       Duration connectionMinBackoff,
-      Duration connectionMaxBackoff) {
+      Duration connectionMaxBackoff,
+      CommandQueue.OverflowMode commandQueueOverflowMode,
+      int commandQueueOverflowBufferSize,
+      boolean adoptRunningAgents,
+      String dispatcher,
+      int eventHandlerParallelism,
+      boolean suppressOffers,
+      Duration offerSuppressionGrace,
+      Duration offerSuppressionMaxGrace,
+      Duration offerDiagnosticsInterval) {
     this.agentTimeout = agentTimeout;
     this.commandQueueBufferSize = commandQueueBufferSize;
     this.failoverTimeout = failoverTimeout;
     this.connectionRetries = connectionRetries;
     this.connectionMinBackoff = connectionMinBackoff;
     this.connectionMaxBackoff = connectionMaxBackoff;
+    this.commandQueueOverflowMode = commandQueueOverflowMode;
+    this.commandQueueOverflowBufferSize = commandQueueOverflowBufferSize;
+    this.adoptRunningAgents = adoptRunningAgents;
+    this.dispatcher = dispatcher;
+    this.eventHandlerParallelism = eventHandlerParallelism;
+    this.suppressOffers = suppressOffers;
+    this.offerSuppressionGrace = offerSuppressionGrace;
+    this.offerSuppressionMaxGrace = offerSuppressionMaxGrace;
+    this.offerDiagnosticsInterval = offerDiagnosticsInterval;
   }
 
   /** @return copy of these settings with overridden command queue buffer size. */
@@ -42,7 +75,16 @@ public class Settings {
         this.failoverTimeout,
         this.connectionRetries,
         this.connectionMinBackoff,
-        this.connectionMaxBackoff);
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
   }
 
   /** @return copy of these settings with overridden agent timeout. */
@@ -51,9 +93,18 @@ public class Settings {
         agentTimeout,
         this.commandQueueBufferSize,
         this.failoverTimeout,
-        connectionRetries,
+        this.connectionRetries,
         this.connectionMinBackoff,
-        this.connectionMaxBackoff);
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
   }
 
   /** @return copy of these settings with overridden failover timeout. */
@@ -62,9 +113,18 @@ public class Settings {
         this.agentTimeout,
         this.commandQueueBufferSize,
         failoverTimeout,
-        connectionRetries,
+        this.connectionRetries,
         this.connectionMinBackoff,
-        this.connectionMaxBackoff);
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
   }
 
   /** @return copy of these settings with overridden connection retries. */
@@ -75,7 +135,16 @@ public class Settings {
         this.failoverTimeout,
         connectionRetries,
         this.connectionMinBackoff,
-        this.connectionMaxBackoff);
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
   }
 
   /** @return copy of these settings with overridden connection min backoff. */
@@ -86,7 +155,16 @@ public class Settings {
         this.failoverTimeout,
         this.connectionRetries,
         connectionMinBackoff,
-        this.connectionMaxBackoff);
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
   }
 
   /** @return copy of these settings with overridden connection max backoff. */
@@ -97,7 +175,196 @@ public class Settings {
         this.failoverTimeout,
         this.connectionRetries,
         this.connectionMinBackoff,
-        connectionMaxBackoff);
+        connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
+  }
+
+  /** @return copy of these settings with overridden command queue overflow mode. */
+  public Settings withCommandQueueOverflowMode(CommandQueue.OverflowMode commandQueueOverflowMode) {
+    return new Settings(
+        this.agentTimeout,
+        this.commandQueueBufferSize,
+        this.failoverTimeout,
+        this.connectionRetries,
+        this.connectionMinBackoff,
+        this.connectionMaxBackoff,
+        commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
+  }
+
+  /** @return copy of these settings with overridden command queue overflow buffer size. */
+  public Settings withCommandQueueOverflowBufferSize(int commandQueueOverflowBufferSize) {
+    return new Settings(
+        this.agentTimeout,
+        this.commandQueueBufferSize,
+        this.failoverTimeout,
+        this.connectionRetries,
+        this.connectionMinBackoff,
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
+  }
+
+  /** @return copy of these settings with overridden adopt running agents. */
+  public Settings withAdoptRunningAgents(boolean adoptRunningAgents) {
+    return new Settings(
+        this.agentTimeout,
+        this.commandQueueBufferSize,
+        this.failoverTimeout,
+        this.connectionRetries,
+        this.connectionMinBackoff,
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
+  }
+
+  /** @return copy of these settings with overridden dispatcher. */
+  public Settings withDispatcher(String dispatcher) {
+    return new Settings(
+        this.agentTimeout,
+        this.commandQueueBufferSize,
+        this.failoverTimeout,
+        this.connectionRetries,
+        this.connectionMinBackoff,
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
+  }
+
+  /** @return copy of these settings with overridden event handler parallelism. */
+  public Settings withEventHandlerParallelism(int eventHandlerParallelism) {
+    return new Settings(
+        this.agentTimeout,
+        this.commandQueueBufferSize,
+        this.failoverTimeout,
+        this.connectionRetries,
+        this.connectionMinBackoff,
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
+  }
+
+  /** @return copy of these settings with overridden offer suppression. */
+  public Settings withSuppressOffers(boolean suppressOffers) {
+    return new Settings(
+        this.agentTimeout,
+        this.commandQueueBufferSize,
+        this.failoverTimeout,
+        this.connectionRetries,
+        this.connectionMinBackoff,
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
+  }
+
+  /** @return copy of these settings with overridden offer suppression grace. */
+  public Settings withOfferSuppressionGrace(Duration offerSuppressionGrace) {
+    return new Settings(
+        this.agentTimeout,
+        this.commandQueueBufferSize,
+        this.failoverTimeout,
+        this.connectionRetries,
+        this.connectionMinBackoff,
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
+  }
+
+  /** @return copy of these settings with overridden maximum offer suppression grace. */
+  public Settings withOfferSuppressionMaxGrace(Duration offerSuppressionMaxGrace) {
+    return new Settings(
+        this.agentTimeout,
+        this.commandQueueBufferSize,
+        this.failoverTimeout,
+        this.connectionRetries,
+        this.connectionMinBackoff,
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        offerSuppressionMaxGrace,
+        this.offerDiagnosticsInterval);
+  }
+
+  /** @return copy of these settings with overridden offer diagnostics interval. */
+  public Settings withOfferDiagnosticsInterval(Duration offerDiagnosticsInterval) {
+    return new Settings(
+        this.agentTimeout,
+        this.commandQueueBufferSize,
+        this.failoverTimeout,
+        this.connectionRetries,
+        this.connectionMinBackoff,
+        this.connectionMaxBackoff,
+        this.commandQueueOverflowMode,
+        this.commandQueueOverflowBufferSize,
+        this.adoptRunningAgents,
+        this.dispatcher,
+        this.eventHandlerParallelism,
+        this.suppressOffers,
+        this.offerSuppressionGrace,
+        this.offerSuppressionMaxGrace,
+        offerDiagnosticsInterval);
   }
 
   /** @return agent timeout setting. */
@@ -130,6 +397,51 @@ public class Settings {
     return this.connectionMaxBackoff;
   }
 
+  /** @return how the command queue behaves when its buffer is full. */
+  public CommandQueue.OverflowMode getCommandQueueOverflowMode() {
+    return this.commandQueueOverflowMode;
+  }
+
+  /** @return number of commands parked while the command queue applies backpressure. */
+  public int getCommandQueueOverflowBufferSize() {
+    return this.commandQueueOverflowBufferSize;
+  }
+
+  /** @return whether running pods of known agent specs are adopted after a restart. */
+  public boolean isAdoptRunningAgents() {
+    return this.adoptRunningAgents;
+  }
+
+  /** @return id of the dispatcher for the Mesos streams or empty for the default one. */
+  public String getDispatcher() {
+    return this.dispatcher;
+  }
+
+  /** @return number of workers that handle USI state events partitioned by pod id. */
+  public int getEventHandlerParallelism() {
+    return this.eventHandlerParallelism;
+  }
+
+  /** @return whether offers are suppressed while no agents are pending. */
+  public boolean isSuppressOffers() {
+    return this.suppressOffers;
+  }
+
+  /** @return initial time without pending agents before offers are suppressed. */
+  public Duration getOfferSuppressionGrace() {
+    return this.offerSuppressionGrace;
+  }
+
+  /** @return upper bound of the adaptive time before offers are suppressed. */
+  public Duration getOfferSuppressionMaxGrace() {
+    return this.offerSuppressionMaxGrace;
+  }
+
+  /** @return how often Mesos agents are sampled to diagnose starved launches, zero disables it. */
+  public Duration getOfferDiagnosticsInterval() {
+    return this.offerDiagnosticsInterval;
+  }
+
   /**
    * Factory method to construct {@link Settings} from a Lightbend {@link Config}.
    *
@@ -143,7 +455,16 @@ public class Settings {
         conf.getDuration("failover-timeout"),
         conf.getInt("connection-retries"),
         conf.getDuration("connection-min-backoff"),
-        conf.getDuration("connection-max-backoff"));
+        conf.getDuration("connection-max-backoff"),
+        CommandQueue.OverflowMode.fromConfig(conf.getString("command-queue-overflow-mode")),
+        conf.getInt("command-queue-overflow-buffer-size"),
+        conf.getBoolean("adopt-running-agents"),
+        conf.getString("dispatcher"),
+        conf.getInt("event-handler-parallelism"),
+        conf.getBoolean("suppress-offers"),
+        conf.getDuration("offer-suppression-grace"),
+        conf.getDuration("offer-suppression-max-grace"),
+        conf.getDuration("offer-diagnostics-interval"));
   }
 
   /**
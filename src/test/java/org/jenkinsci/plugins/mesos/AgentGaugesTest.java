@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.mesos;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import com.codahale.metrics.MetricRegistry;
+import org.jenkinsci.plugins.mesos.AgentGauges.State;
+import org.junit.jupiter.api.Test;
+
+public class AgentGaugesTest {
+
+  @Test
+  void countAgentsPerState() {
+    // Given the gauges of a framework.
+    final MetricRegistry registry = new MetricRegistry();
+    final AgentGauges gauges = new AgentGauges(registry, "jenkins framework");
+
+    // When two agents are queued and one of them goes through its lifecycle.
+    gauges.move("linux", null, State.PENDING);
+    gauges.move("linux", null, State.PENDING);
+    gauges.move("linux", State.PENDING, State.RUNNING);
+    gauges.move("linux", State.RUNNING, State.ONLINE);
+    gauges.move("linux", State.ONLINE, State.TERMINAL);
+
+    // Then each agent is counted in its current state and the terminal agent stays counted.
+    assertThat(gauges.get("linux", State.PENDING), is(1L));
+    assertThat(gauges.get("linux", State.RUNNING), is(0L));
+    assertThat(gauges.get("linux", State.ONLINE), is(0L));
+    assertThat(gauges.get("linux", State.TERMINAL), is(1L));
+    final String pending = "mesos.framework.jenkins-framework.agents.linux.pending";
+    assertThat(registry.getGauges().get(pending).getValue(), is(1L));
+
+    // When the framework is closed.
+    gauges.close();
+
+    // Then its gauges are removed.
+    assertThat(registry.getGauges().isEmpty(), is(true));
+  }
+
+  @Test
+  void keepGaugesOfNewFrameworkWithSameName() {
+    // Given the gauges of a framework and of its replacement with the same name.
+    final MetricRegistry registry = new MetricRegistry();
+    final AgentGauges old = new AgentGauges(registry, "jenkins");
+    old.move("linux", null, State.PENDING);
+    final AgentGauges replacement = new AgentGauges(registry, "jenkins");
+    replacement.move("linux", null, State.RUNNING);
+
+    // When the old framework is closed.
+    old.close();
+
+    // Then the gauges of the replacement stay registered.
+    final String running = "mesos.framework.jenkins.agents.linux.running";
+    assertThat(registry.getGauges().get(running).getValue(), is(1L));
+    assertThat(registry.getGauges().size(), is(State.values().length));
+  }
+}
@@ -0,0 +1,50 @@
+package org.jenkinsci.plugins.mesos;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class AgentTimelineTest {
+
+  @Test
+  void keepLatestEventsPerAgent() {
+    // When more events than the capacity are recorded for an agent.
+    for (int i = 0; i < 100; i++) {
+      AgentTimeline.record("ring-agent", AgentTimeline.Type.STATUS, "event " + i);
+    }
+
+    // Then only the latest events are kept in order.
+    final List<AgentTimeline.Event> events = AgentTimeline.get("ring-agent").get().getEvents();
+    assertThat(events.size(), is(AgentTimeline.MAX_EVENTS_PER_AGENT));
+    assertThat(events.get(0).getMessage(), is("event 36"));
+    assertThat(events.get(events.size() - 1).getMessage(), is("event 99"));
+  }
+
+  @Test
+  void dropOldestAgentWhenFull() {
+    // Given the timeline of an agent.
+    AgentTimeline.record("first-agent", AgentTimeline.Type.QUEUED, "Launch command queued");
+
+    // When the timelines of as many agents as the capacity are recorded.
+    for (int i = 0; i < AgentTimeline.MAX_AGENTS; i++) {
+      AgentTimeline.record("agent-" + i, AgentTimeline.Type.QUEUED, "Launch command queued");
+    }
+
+    // Then the first agent is dropped.
+    assertThat(AgentTimeline.get("first-agent").isPresent(), is(false));
+    assertThat(AgentTimeline.getPodIds().size(), is(AgentTimeline.MAX_AGENTS));
+  }
+
+  @Test
+  void truncateMessages() {
+    // When an event with a long message is recorded.
+    final String message = new String(new char[1000]).replace('\0', 'x');
+    AgentTimeline.record("verbose-agent", AgentTimeline.Type.STATUS, message);
+
+    // Then the message is truncated.
+    final AgentTimeline.Event event = AgentTimeline.get("verbose-agent").get().getEvents().get(0);
+    assertThat(event.getMessage().length(), is(AgentStatus.MAX_MESSAGE_LENGTH));
+  }
+}
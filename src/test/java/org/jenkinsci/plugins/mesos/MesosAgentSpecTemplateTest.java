@@ -0,0 +1,103 @@
+package org.jenkinsci.plugins.mesos;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import hudson.model.Node.Mode;
+import java.util.Collections;
+import org.jenkinsci.plugins.mesos.fixture.AgentSpecMother;
+import org.junit.jupiter.api.Test;
+
+public class MesosAgentSpecTemplateTest {
+
+  @Test
+  public void recognizeGeneratedNames() {
+    // Given two templates whose labels share a prefix
+    final MesosAgentSpecTemplate spec = AgentSpecMother.simple;
+    final MesosAgentSpecTemplate other =
+        new MesosAgentSpecTemplate(
+            "label-linux",
+            Mode.EXCLUSIVE,
+            "0.1",
+            "32",
+            1,
+            1,
+            1,
+            "0",
+            "",
+            "",
+            Collections.emptyList(),
+            null,
+            null,
+            null);
+
+    // When a name is generated
+    final String name = spec.generateName();
+
+    // Then only the generating template recognizes it.
+    assertThat(spec.isGeneratedName(name), is(true));
+    assertThat(other.isGeneratedName(name), is(false));
+    assertThat(spec.isGeneratedName(other.generateName()), is(false));
+    assertThat(spec.isGeneratedName("jenkins-agent-label-not-a-uuid"), is(false));
+    assertThat(spec.isGeneratedName("agent-before-failover"), is(false));
+  }
+
+  @Test
+  public void disablePoolByDefault() {
+    final MesosAgentSpecTemplate spec =
+        new MesosAgentSpecTemplate(
+            "label",
+            Mode.EXCLUSIVE,
+            "0.1",
+            "32",
+            1,
+            1,
+            1,
+            "0",
+            "",
+            "",
+            Collections.emptyList(),
+            null,
+            null,
+            null);
+    assertThat(spec.getMinIdle(), is(0));
+    assertThat(spec.getMaxIdle(), is(0));
+
+    spec.setMinIdle(-1);
+    spec.setMaxIdle(3);
+    assertThat(spec.getMinIdle(), is(0));
+    assertThat(spec.getMaxIdle(), is(3));
+  }
+
+  @Test
+  public void disableOfferMatchDeadlineByDefault() {
+    final MesosAgentSpecTemplate spec =
+        new MesosAgentSpecTemplate(
+            "label",
+            Mode.EXCLUSIVE,
+            "0.1",
+            "32",
+            1,
+            1,
+            1,
+            "0",
+            "",
+            "",
+            Collections.emptyList(),
+            null,
+            null,
+            null);
+    assertThat(spec.getOfferMatchDeadlineSeconds(), is(0));
+    assertThat(spec.getFallbackLabel(), is(""));
+
+    spec.setOfferMatchDeadlineSeconds(-1);
+    spec.setFallbackLabel("  ");
+    assertThat(spec.getOfferMatchDeadlineSeconds(), is(0));
+    assertThat(spec.getFallbackLabel(), is(""));
+
+    spec.setOfferMatchDeadlineSeconds(120);
+    spec.setFallbackLabel(" linux-large ");
+    assertThat(spec.getOfferMatchDeadlineSeconds(), is(120));
+    assertThat(spec.getFallbackLabel(), is("linux-large"));
+  }
+}
@@ -1,18 +1,35 @@
 package org.jenkinsci.plugins.mesos;
 
+import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.codahale.metrics.Meter;
+import com.typesafe.config.ConfigFactory;
+import hudson.model.Label;
+import hudson.model.Node;
 import hudson.util.XStream2;
 import io.jenkins.plugins.casc.ConfigurationAsCode;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import jenkins.metrics.api.Metrics;
 import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.mesos.api.OfferSuppressor;
+import org.jenkinsci.plugins.mesos.fixture.AgentSpecMother;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
@@ -36,6 +53,8 @@ public class MesosCloudTest {
 
     assertThat(cloud.getMesosMasterUrl(), is("http://localhost:5050"));
     assertThat(cloud.getMesosAgentSpecTemplates(), hasSize(39));
+    assertThat(cloud.getDeclineOfferDuration(), is(Optional.of(Duration.ofMinutes(5))));
+    assertThat(xstream.toXML(cloud), not(containsString("declineOfferDuration")));
     cloud
         .getMesosAgentSpecTemplates()
         .forEach(
@@ -76,4 +95,144 @@ public class MesosCloudTest {
 
     assertThat(j.jenkins.clouds.getAll(MesosCloud.class), hasSize(1));
   }
+
+  @Test
+  void doNotBlockOnInitializingConnection(TestUtils.JenkinsRule j) throws Exception {
+    // Given a cloud whose Mesos master has not been detected yet
+    final MesosCloud slowCloud =
+        new MesosCloud(
+            "http://localhost:5050",
+            "slow-framework",
+            null,
+            "*",
+            "root",
+            j.getURL().toString(),
+            Collections.emptyList());
+    final CompletableFuture<MesosApi> initializing = new CompletableFuture<>();
+    MesosApi.sessions.put(slowCloud.getFrameworkId(), initializing);
+
+    try {
+      // When agents are started
+      final List<CompletableFuture<Node>> nodes =
+          slowCloud.startAgents(Collections.singletonList("agent"), AgentSpecMother.simple);
+
+      // Then the call returns without waiting on the connection.
+      assertThat(nodes, hasSize(1));
+      assertThat(nodes.get(0).isDone(), is(false));
+    } finally {
+      MesosApi.sessions.remove(slowCloud.getFrameworkId());
+    }
+  }
+
+  @Test
+  void retryFailedConnection(TestUtils.JenkinsRule j) throws Exception {
+    // Given a cloud whose connection failed to initialize
+    final MesosCloud cloud =
+        new MesosCloud(
+            "http://localhost:5050",
+            "failed-framework",
+            null,
+            "*",
+            "root",
+            j.getURL().toString(),
+            Collections.emptyList());
+    final CompletableFuture<MesosApi> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new IllegalStateException("Mesos master is unreachable"));
+    MesosApi.sessions.put(cloud.getFrameworkId(), failed);
+
+    // When the connection is fetched
+    final CompletableFuture<MesosApi> session =
+        MesosApi.getInstanceAsync(cloud).toCompletableFuture();
+
+    // Then the failure is reported and the next call will reconnect.
+    assertThat(session.isCompletedExceptionally(), is(true));
+    assertThat(MesosApi.sessions.containsKey(cloud.getFrameworkId()), is(false));
+  }
+
+  @Test
+  void memoizeSpecForLabel(TestUtils.JenkinsRule j) throws Exception {
+    // Given a cloud with one template
+    final MesosCloud cloud =
+        new MesosCloud(
+            "http://localhost:5050",
+            "jenkins-framework",
+            null,
+            "*",
+            "root",
+            j.getURL().toString(),
+            Collections.singletonList(AgentSpecMother.simple));
+    final Meter hits = Metrics.metricRegistry().meter("mesos.cloud.spec-for-label.hit");
+    final Meter misses = Metrics.metricRegistry().meter("mesos.cloud.spec-for-label.miss");
+    final long hitsBefore = hits.getCount();
+    final long missesBefore = misses.getCount();
+
+    // When the provisioner asks twice for the same labels
+    for (int i = 0; i < 2; i++) {
+      assertThat(cloud.canProvision(Label.get("label")), is(true));
+      assertThat(cloud.canProvision(Label.get("unknown")), is(false));
+    }
+
+    // Then each label is resolved only once.
+    assertThat(misses.getCount() - missesBefore, is(2L));
+    assertThat(hits.getCount() - hitsBefore, is(2L));
+  }
+
+  @Test
+  void releaseTimedOutAgentWithoutOffer(TestUtils.JenkinsRule j) throws Exception {
+    // Given a connection that never receives offers with a short agent timeout and grace
+    final MesosCloud cloud =
+        new MesosCloud(
+            "http://localhost:5050",
+            "timeout-framework",
+            null,
+            "*",
+            "root",
+            j.getURL().toString(),
+            Collections.singletonList(AgentSpecMother.simple));
+    System.setProperty("usi.jenkins.agent-timeout", "1 second");
+    System.setProperty("usi.jenkins.offer-suppression-grace", "1 second");
+    ConfigFactory.invalidateCaches();
+    final MesosApi api;
+    try {
+      api =
+          new MesosApi(
+              "http://localhost:5050",
+              j.getURL(),
+              "root",
+              "timeout-framework",
+              cloud.getFrameworkId(),
+              "*",
+              Optional.empty(),
+              Optional.empty());
+    } finally {
+      System.clearProperty("usi.jenkins.agent-timeout");
+      System.clearProperty("usi.jenkins.offer-suppression-grace");
+      ConfigFactory.invalidateCaches();
+    }
+    api.getOfferSuppressor()
+        .connected(
+            new OfferSuppressor.OfferCalls() {
+              @Override
+              public void suppress() {}
+
+              @Override
+              public void revive() {}
+            });
+    MesosApi.sessions.put(cloud.getFrameworkId(), CompletableFuture.completedFuture(api));
+
+    try {
+      // When an agent times out before an offer matched
+      final Future<Node> node = cloud.startAgent("timeout-agent", AgentSpecMother.simple);
+      assertThrows(ExecutionException.class, node::get);
+
+      // Then it is not pending anymore and offers are suppressed.
+      assertThat(api.getAgentGauges().getTotal(AgentGauges.State.PENDING), is(0L));
+      assertThat(api.getAgentGauges().getTotal(AgentGauges.State.TERMINAL), is(1L));
+      assertThat(api.getState().isEmpty(), is(true));
+      await().atMost(30, TimeUnit.SECONDS).until(api.getOfferSuppressor()::isSuppressed);
+    } finally {
+      MesosApi.sessions.remove(cloud.getFrameworkId());
+      api.close();
+    }
+  }
 }
@@ -8,18 +8,22 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import akka.actor.ActorSystem;
 import akka.stream.ActorMaterializer;
+import com.codahale.metrics.MetricRegistry;
 import com.mesosphere.usi.core.models.PodId;
 import com.mesosphere.usi.core.models.PodStatus;
 import com.mesosphere.usi.core.models.PodStatusUpdatedEvent;
 import com.mesosphere.usi.core.models.TaskId;
 import hudson.model.Descriptor;
 import hudson.model.Node;
+import hudson.model.TaskListener;
 import java.io.IOException;
 import java.net.URL;
 import java.time.Duration;
 import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.mesos.v1.Protos.AgentID;
 import org.apache.mesos.v1.Protos.TaskID;
 import org.apache.mesos.v1.Protos.TaskState;
 import org.apache.mesos.v1.Protos.TaskStatus;
@@ -34,6 +38,26 @@ public class MesosJenkinsAgentTest {
   static ActorSystem system = ActorSystem.create("agent-test");
   static ActorMaterializer materializer = ActorMaterializer.create(system);
 
+  @Test
+  void honorExecutorCount(TestUtils.JenkinsRule j) throws Descriptor.FormException, IOException {
+    // When a Mesos Jenkins agent is created with three executors
+    final MesosJenkinsAgent agent =
+        new MesosJenkinsAgent(
+            null,
+            "multi-executor-agent",
+            AgentSpecMother.simple,
+            "An agent with three executors.",
+            new URL("http://localhost:8080"),
+            5,
+            false,
+            Collections.emptyList(),
+            Duration.ofMinutes(5),
+            3);
+
+    // Then Jenkins sees three executors.
+    assertThat(agent.getNumExecutors(), is(3));
+  }
+
   @Test
   void shortcircuitWaitUntilOnline(TestUtils.JenkinsRule j)
       throws Descriptor.FormException, IOException {
@@ -74,4 +98,104 @@ public class MesosJenkinsAgentTest {
         exception.getCause().getMessage(),
         is(equalTo("Agent failed-agent became TASK_FAILED: could not start agent.jar")));
   }
+
+  @Test
+  void completeWaitUntilOnlineWhenComputerComesOnline(TestUtils.JenkinsRule j) throws Exception {
+    // Given a Mesos Jenkins agent.
+    final MesosJenkinsAgent agent =
+        new MesosJenkinsAgent(
+            null,
+            "online-agent",
+            AgentSpecMother.simple,
+            "An agent coming online.",
+            new URL("http://localhost:8080"),
+            5,
+            false,
+            Collections.emptyList(),
+            Duration.ofMinutes(5));
+
+    // And we are waiting for it to come online.
+    final CompletableFuture<Node> futureNode = agent.waitUntilOnlineAsync(materializer);
+
+    // When Jenkins reports its computer online.
+    new MesosComputerListener().onOnline(new MesosComputer(agent), TaskListener.NULL);
+
+    // Then we finish immediately.
+    assertThat(futureNode.get(1, TimeUnit.SECONDS), is(agent));
+    assertThat(MesosComputerListener.pendingCount(), is(0));
+  }
+
+  @Test
+  void updateStatusSnapshot(TestUtils.JenkinsRule j) throws Exception {
+    // Given a Mesos Jenkins agent without status.
+    final MesosJenkinsAgent agent =
+        new MesosJenkinsAgent(
+            null,
+            "running-agent",
+            AgentSpecMother.simple,
+            "A running agent.",
+            new URL("http://localhost:8080"),
+            5,
+            false,
+            Collections.emptyList(),
+            Duration.ofMinutes(5));
+    assertThat(agent.getStatus(), is(AgentStatus.UNKNOWN));
+    assertThat(agent.isRunning(), is(false));
+
+    // When the agent receives a running task status event.
+    PodId podId = new PodId("running-agent");
+    TaskStatus taskStatus =
+        TaskStatus.newBuilder()
+            .setTaskId(TaskID.newBuilder().setValue("running-agent-1234").build())
+            .setState(TaskState.TASK_RUNNING)
+            .setAgentId(AgentID.newBuilder().setValue("mesos-agent-1"))
+            .setMessage(String.join("", Collections.nCopies(300, "x")))
+            .build();
+    scala.collection.immutable.Map<TaskId, TaskStatus> taskStatusMap =
+        new scala.collection.immutable.Map.Map1(new TaskId("running-agent-1234"), taskStatus);
+    PodStatus status = new PodStatus(podId, taskStatusMap);
+    agent.update(new PodStatusUpdatedEvent(podId, Option.apply(status)));
+
+    // Then the new snapshot is visible.
+    assertThat(agent.isRunning(), is(true));
+    assertThat(agent.isKilled(), is(false));
+    assertThat(agent.isTerminalOrUnreachable(), is(false));
+    assertThat(agent.getStatus().getState(), is(TaskState.TASK_RUNNING));
+    assertThat(agent.getStatus().getAgentId().get(), is("mesos-agent-1"));
+
+    // And only a compact record is kept.
+    assertThat(agent.getStatus().getMessage().length(), is(AgentStatus.MAX_MESSAGE_LENGTH));
+    assertThat(agent.getStatus().getPodStatus().isPresent(), is(false));
+    assertThat(AgentStatus.of(status, true).getPodStatus().get(), is(status));
+  }
+
+  @Test
+  void recordLaunchPhases(TestUtils.JenkinsRule j) throws Exception {
+    // Given a Mesos Jenkins agent that was queued.
+    final MesosJenkinsAgent agent =
+        new MesosJenkinsAgent(
+            null,
+            "launching-agent",
+            AgentSpecMother.simple,
+            "A launching agent.",
+            new URL("http://localhost:8080"),
+            5,
+            false,
+            Collections.emptyList(),
+            Duration.ofMinutes(5));
+    final MetricRegistry registry = jenkins.metrics.api.Metrics.metricRegistry();
+    final long queued = registry.timer("mesos.cloud.label.launch.queued").getCount();
+    final long running = registry.timer("mesos.cloud.label.launch.running").getCount();
+    final long staging = registry.timer("mesos.cloud.label.launch.staging").getCount();
+    agent.getLaunchPhases().reached(LaunchPhases.Phase.QUEUED);
+
+    // When the task is running and a late staging update arrives.
+    agent.getLaunchPhases().reached(TaskState.TASK_RUNNING);
+    agent.getLaunchPhases().reached(TaskState.TASK_STAGING);
+
+    // Then each reached phase is recorded once in order.
+    assertThat(registry.timer("mesos.cloud.label.launch.queued").getCount(), is(queued + 1));
+    assertThat(registry.timer("mesos.cloud.label.launch.running").getCount(), is(running + 1));
+    assertThat(registry.timer("mesos.cloud.label.launch.staging").getCount(), is(staging));
+  }
 }
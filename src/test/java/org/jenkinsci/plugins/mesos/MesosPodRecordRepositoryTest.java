@@ -0,0 +1,134 @@
+package org.jenkinsci.plugins.mesos;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.mesosphere.usi.core.models.AgentId;
+import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.PodRecord;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import scala.collection.immutable.Map;
+import scala.compat.java8.FutureConverters;
+import scala.concurrent.Future;
+
+public class MesosPodRecordRepositoryTest {
+
+  @TempDir Path journalDirectory;
+
+  @Test
+  public void recoverStoredRecords() throws Exception {
+    // Given a journal with three stored and one deleted record.
+    final MesosPodRecordRepository repository = new MesosPodRecordRepository(journalDirectory);
+    final PodRecord first = record("jenkins-agent-1");
+    final PodRecord second = record("jenkins-agent-2");
+    final PodRecord third = record("jenkins-agent-3");
+    await(repository.store(first));
+    await(repository.store(second));
+    await(repository.store(third));
+    await(repository.delete(second.podId()));
+    repository.close();
+
+    // When the journal is reopened
+    final Map<Object, Object> recovered =
+        await(new MesosPodRecordRepository(journalDirectory).readAll());
+
+    // Then all live records are recovered.
+    assertThat(recovered.size(), is(2));
+    assertThat(recovered.apply(first.podId()), is(first));
+    assertThat(recovered.apply(third.podId()), is(third));
+    assertThat(recovered.contains(second.podId()), is(false));
+  }
+
+  @Test
+  public void truncateTornEntry() throws Exception {
+    // Given a journal with one record.
+    final MesosPodRecordRepository repository = new MesosPodRecordRepository(journalDirectory);
+    final PodRecord record = record("jenkins-agent-1");
+    await(repository.store(record));
+    repository.close();
+
+    // And a torn entry at its end.
+    try (FileChannel channel =
+        FileChannel.open(
+            journalDirectory.resolve(MesosPodRecordRepository.JOURNAL_FILE),
+            StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 42, 1, 2, 3}));
+    }
+
+    // When the journal is reopened
+    final MesosPodRecordRepository recovered = new MesosPodRecordRepository(journalDirectory);
+
+    // Then only the complete entry is recovered
+    assertThat(await(recovered.readAll()).size(), is(1));
+    assertThat(recovered.getJournalEntries(), is(1L));
+
+    // And new entries are appended after it.
+    final PodRecord next = record("jenkins-agent-2");
+    await(recovered.store(next));
+    recovered.close();
+    assertThat(await(new MesosPodRecordRepository(journalDirectory).readAll()).size(), is(2));
+  }
+
+  @Test
+  public void compactJournal() throws Exception {
+    // Given a repository that stores and deletes many records.
+    final MesosPodRecordRepository repository = new MesosPodRecordRepository(journalDirectory);
+    final List<CompletableFuture<?>> writes = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      final PodRecord record = record("jenkins-agent-" + i);
+      writes.add(FutureConverters.toJava(repository.store(record)).toCompletableFuture());
+      if (i % 10 != 0) {
+        writes.add(
+            FutureConverters.toJava(repository.delete(record.podId())).toCompletableFuture());
+      }
+    }
+
+    // When all writes are synced
+    CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get();
+    repository.close();
+
+    // Then the journal was compacted
+    assertThat(repository.getJournalEntries(), is(lessThan(3800L)));
+
+    // And all live records survive a restart.
+    assertThat(await(new MesosPodRecordRepository(journalDirectory).readAll()).size(), is(200));
+  }
+
+  @Test
+  public void failWritesAfterClose() throws Exception {
+    // Given a closed repository.
+    final MesosPodRecordRepository repository = new MesosPodRecordRepository(journalDirectory);
+    repository.close();
+
+    // When a record is stored
+    final CompletableFuture<?> write =
+        FutureConverters.toJava(repository.store(record("jenkins-agent-1"))).toCompletableFuture();
+
+    // Then the write fails without touching the records.
+    final ExecutionException ex = assertThrows(ExecutionException.class, write::get);
+    assertThat(ex.getCause(), is(instanceOf(IllegalStateException.class)));
+    assertThat(await(repository.readAll()).size(), is(0));
+  }
+
+  private static PodRecord record(String podId) {
+    return new PodRecord(
+        new PodId(podId), Instant.ofEpochSecond(1585000000L, 42), new AgentId("agent-" + podId));
+  }
+
+  private static <T> T await(Future<T> future) throws Exception {
+    return FutureConverters.toJava(future).toCompletableFuture().get();
+  }
+}
@@ -2,9 +2,13 @@ package org.jenkinsci.plugins.mesos;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 
+import com.codahale.metrics.Meter;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 
+@ExtendWith(TestUtils.JenkinsParameterResolver.class)
 public class MetricsTest {
 
   @Test
@@ -12,4 +16,23 @@ public class MetricsTest {
     final String prefix = "I'm an invalid pref$x!.1";
     assertThat(Metrics.sanitize(prefix), is("I-m-an-invalid-pref-x-.1"));
   }
+
+  @Test
+  void cacheInstancePerFrameworkName(TestUtils.JenkinsRule j) {
+    final com.mesosphere.usi.metrics.Metrics metrics = Metrics.getInstance("cached framework");
+    assertThat(Metrics.getInstance("cached framework"), is(sameInstance(metrics)));
+  }
+
+  @Test
+  void cacheLabelMetrics(TestUtils.JenkinsRule j) {
+    // When the handles of a label are resolved twice.
+    final LabelMetrics first = LabelMetrics.forLabel("cached");
+    final LabelMetrics second = LabelMetrics.forLabel("cached");
+
+    // Then they are cached and registered with Jenkins.
+    assertThat(second, is(sameInstance(first)));
+    final Meter request =
+        jenkins.metrics.api.Metrics.metricRegistry().meter("mesos.cloud.cached.provision.request");
+    assertThat(first.provisionRequest(), is(sameInstance(request)));
+  }
 }
@@ -0,0 +1,127 @@
+package org.jenkinsci.plugins.mesos;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import com.mesosphere.usi.core.models.PodId;
+import hudson.model.Node.Mode;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import jenkins.metrics.api.Metrics;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.mesos.api.LaunchPrototype;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(TestUtils.JenkinsParameterResolver.class)
+public class OfferDiagnosticsTest {
+
+  private static final String AGENTS =
+      "{\"type\":\"GET_AGENTS\",\"get_agents\":{\"agents\":["
+          // Matches.
+          + agent("a1", "r1", scalar("cpus", 4, "*"), scalar("mem", 4096, "*"))
+          + ","
+          // Wrong rack.
+          + agent("a2", "r2", scalar("cpus", 4, "*"), scalar("mem", 4096, "*"))
+          + ","
+          // Not enough unallocated CPUs.
+          + agent("a3", "r1", scalar("cpus", 0.5, "*"), scalar("mem", 4096, "*"))
+          + ","
+          // CPUs are reserved for another role.
+          + agent("a4", "r1", scalar("cpus", 4, "other"), scalar("mem", 4096, "*"))
+          + ","
+          // CPUs are reserved for the framework's role but memory is short.
+          + agent("a5", "r1", scalar("cpus", 4, "jenkins"), scalar("mem", 512, "*"))
+          + "]}}";
+
+  private static String agent(String id, String rack, String... resources) {
+    return String.format(
+        "{\"agent_info\":{\"id\":{\"value\":\"%s\"},\"attributes\":[{\"name\":\"rack\","
+            + "\"type\":\"TEXT\",\"text\":{\"value\":\"%s\"}}]},\"total_resources\":[%s]}",
+        id, rack, String.join(",", resources));
+  }
+
+  private static String scalar(String name, double value, String role) {
+    final String reservations =
+        "*".equals(role)
+            ? ""
+            : String.format(",\"reservations\":[{\"type\":\"STATIC\",\"role\":\"%s\"}]", role);
+    return String.format(
+        "{\"name\":\"%s\",\"type\":\"SCALAR\",\"scalar\":{\"value\":%s}%s}",
+        name, value, reservations);
+  }
+
+  @Test
+  void rejectByFirstFailingConstraint(TestUtils.JenkinsRule j) throws Exception {
+    // Given a launch with 1 CPU and 1 GB of memory on rack r1 and a sample of Mesos agents.
+    final LaunchPrototype prototype = rackSpec().getLaunchPrototype(j.getURL(), "jenkins", 1);
+    final List<AgentCapacity> agents = AgentCapacity.parseAgents(JSONObject.fromObject(AGENTS));
+
+    // When each Mesos agent is checked.
+    // Then the first constraint that rules it out is returned.
+    assertThat(
+        OfferDiagnostics.reject(prototype, agents.get(0), Optional.empty()), is(Optional.empty()));
+    assertThat(
+        OfferDiagnostics.reject(prototype, agents.get(1), Optional.empty()),
+        is(Optional.of(OfferDiagnostics.Reason.ATTRIBUTE)));
+    assertThat(
+        OfferDiagnostics.reject(prototype, agents.get(2), Optional.empty()),
+        is(Optional.of(OfferDiagnostics.Reason.CPUS)));
+    assertThat(
+        OfferDiagnostics.reject(prototype, agents.get(3), Optional.empty()),
+        is(Optional.of(OfferDiagnostics.Reason.ROLE)));
+    assertThat(
+        OfferDiagnostics.reject(prototype, agents.get(4), Optional.empty()),
+        is(Optional.of(OfferDiagnostics.Reason.MEM)));
+  }
+
+  @Test
+  void aggregateRejectionsPerLabel(TestUtils.JenkinsRule j) throws Exception {
+    // Given an agent that waits for an offer.
+    final LaunchPrototype prototype = rackSpec().getLaunchPrototype(j.getURL(), "jenkins", 1);
+    final OfferDiagnostics diagnostics = new OfferDiagnostics();
+    diagnostics.register(new PodId("rack-agent"), "rack", prototype);
+    diagnostics.register(new PodId("matched-agent"), "rack", prototype);
+
+    // When the other agent got an offer and the Mesos agents are sampled.
+    final boolean due =
+        diagnostics.prune(podId -> podId.value().equals("rack-agent"), Duration.ZERO);
+    diagnostics.diagnose(
+        AgentCapacity.parseAgents(JSONObject.fromObject(AGENTS)), Optional.empty());
+
+    // Then the rejections are counted for the label.
+    assertThat(due, is(true));
+    assertThat(
+        Metrics.metricRegistry().meter("mesos.cloud.rack.offer-rejected.cpus").getCount(), is(1L));
+    assertThat(
+        Metrics.metricRegistry().meter("mesos.cloud.rack.offer-rejected.role").getCount(), is(1L));
+
+    // And the diagnosis of the waiting agent is served.
+    final JSONObject json = diagnostics.toJSON();
+    assertThat(json.size(), is(1));
+    final JSONObject diagnosis = json.getJSONObject("rack-agent").getJSONObject("diagnosis");
+    assertThat(diagnosis.getInt("agents"), is(5));
+    assertThat(diagnosis.getInt("matching"), is(1));
+    assertThat(diagnosis.getJSONObject("rejected").getInt("attribute"), is(1));
+  }
+
+  private static MesosAgentSpecTemplate rackSpec() {
+    return new MesosAgentSpecTemplate(
+        "rack",
+        Mode.EXCLUSIVE,
+        "1",
+        "1024",
+        1,
+        1,
+        1,
+        "0",
+        "",
+        "rack:r1",
+        Collections.emptyList(),
+        null,
+        null,
+        null);
+  }
+}
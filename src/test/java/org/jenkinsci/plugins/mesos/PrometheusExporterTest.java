@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.mesos;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class PrometheusExporterTest {
+
+  @Test
+  void exportPluginMetricsWithLabels() throws Exception {
+    // Given a registry with plugin and other metrics.
+    final MetricRegistry registry = new MetricRegistry();
+    final PrometheusExporter exporter = new PrometheusExporter();
+    registry.meter("mesos.cloud.linux.provision.request").mark(3);
+    exporter.attach(registry);
+    registry.timer("mesos.cloud.linux.launch.running").update(2, TimeUnit.SECONDS);
+    registry.register("mesos.framework.jenkins.agents.linux.pending", (Gauge<Long>) () -> 5L);
+    registry.meter("mesos.framework.jenkins.offers.suppressed").mark();
+    registry.meter("mesos.cloud.linux.offer-rejected.mem").mark(2);
+    registry.meter("jenkins.node.count").mark();
+
+    // When the metrics are exported.
+    final StringWriter writer = new StringWriter();
+    exporter.write(writer, Collections.singletonMap("jenkins", "*"));
+    final String body = writer.toString();
+
+    // Then the dotted names are turned into labels.
+    assertThat(body, containsString("# TYPE mesos_cloud_provision_request_total counter\n"));
+    assertThat(body, containsString("mesos_cloud_provision_request_total{label=\"linux\"} 3.0\n"));
+    assertThat(body, containsString("# TYPE mesos_cloud_launch_seconds summary\n"));
+    final String launch = "mesos_cloud_launch_seconds";
+    final String running = "label=\"linux\",phase=\"running\"";
+    assertThat(body, containsString(launch + "{" + running + ",quantile=\"0.5\"} 2.0\n"));
+    assertThat(body, containsString(launch + "_count{" + running + "} 1.0\n"));
+    assertThat(body, not(containsString(launch + "_sum")));
+    assertThat(
+        body,
+        containsString(
+            "mesos_framework_agents{framework=\"jenkins\",label=\"linux\",state=\"pending\","
+                + "role=\"*\"} 5.0\n"));
+    assertThat(
+        body,
+        containsString(
+            "mesos_framework_offers_suppressed_total{framework=\"jenkins\",role=\"*\"} 1.0\n"));
+    assertThat(
+        body,
+        containsString("mesos_cloud_offer_rejected_total{label=\"linux\",reason=\"mem\"} 2.0\n"));
+
+    // And other metrics are not exported.
+    assertThat(body, not(containsString("jenkins_node_count")));
+  }
+}
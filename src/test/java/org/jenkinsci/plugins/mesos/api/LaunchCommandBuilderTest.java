@@ -2,10 +2,14 @@ package org.jenkinsci.plugins.mesos.api;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 
 import akka.actor.ActorSystem;
 import akka.stream.ActorMaterializer;
+import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.commands.LaunchPod;
 import hudson.security.FullControlOnceLoggedInAuthorizationStrategy;
 import hudson.security.HudsonPrivateSecurityRealm;
 import jenkins.model.Jenkins;
@@ -44,4 +48,30 @@ public class LaunchCommandBuilderTest {
     // after enabling security shell command contains secret
     assertThat(builder.buildJnlpSecret(), containsString("-secret"));
   }
+
+  @Test
+  public void reusePrototypeForAgents(TestUtils.JenkinsRule j) throws Exception {
+    // Given a prototype for a spec
+    final LaunchPrototype prototype =
+        new LaunchCommandBuilder()
+            .withCpu(0.1)
+            .withMemory(32)
+            .withDisk(0.0)
+            .withRole("*")
+            .withJenkinsUrl(j.getURL())
+            .withJnlpArguments("-noReconnect")
+            .buildPrototype();
+
+    // When two agents are launched from it
+    final LaunchPod first = prototype.newLaunchCommand("jenkins-agent-first");
+    final LaunchPod second = prototype.newLaunchCommand("jenkins-agent-second");
+
+    // Then the shared command prefix stops before the agent specific arguments
+    assertThat(prototype.getCommandPrefix(), endsWith("agent.jar -noReconnect"));
+    assertThat(prototype.getCommandPrefix(), not(containsString("-jnlpUrl")));
+
+    // And each launch command carries its own pod id.
+    assertThat(first.podId(), is(new PodId("jenkins-agent-first")));
+    assertThat(second.podId(), is(new PodId("jenkins-agent-second")));
+  }
 }
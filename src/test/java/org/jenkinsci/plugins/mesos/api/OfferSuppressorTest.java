@@ -0,0 +1,158 @@
+package org.jenkinsci.plugins.mesos.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import com.codahale.metrics.MetricRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class OfferSuppressorTest {
+
+  private static class CountingCalls implements OfferSuppressor.OfferCalls {
+    final AtomicInteger suppressed = new AtomicInteger(0);
+    final AtomicInteger revived = new AtomicInteger(0);
+
+    @Override
+    public void suppress() {
+      suppressed.incrementAndGet();
+    }
+
+    @Override
+    public void revive() {
+      revived.incrementAndGet();
+    }
+  }
+
+  @Test
+  void suppressWhenIdleAndReviveOnDemand() {
+    // Given a connected suppressor with a grace of 30 seconds.
+    final AtomicLong now = new AtomicLong(0);
+    final MetricRegistry registry = new MetricRegistry();
+    final OfferSuppressor suppressor =
+        new OfferSuppressor(
+            Duration.ofSeconds(30), Duration.ofMinutes(5), registry, "jenkins", now::get);
+    final CountingCalls calls = new CountingCalls();
+    suppressor.connected(calls);
+
+    // When no agent is pending for less than the grace.
+    suppressor.update(0);
+    now.addAndGet(Duration.ofSeconds(20).toNanos());
+    suppressor.update(0);
+
+    // Then offers are not suppressed.
+    assertThat(calls.suppressed.get(), is(0));
+
+    // When no agent is pending for the grace.
+    now.addAndGet(Duration.ofSeconds(10).toNanos());
+    suppressor.update(0);
+    suppressor.update(0);
+
+    // Then offers are suppressed once.
+    assertThat(calls.suppressed.get(), is(1));
+    assertThat(suppressor.isSuppressed(), is(true));
+    assertThat(registry.meter("mesos.framework.jenkins.offers.suppressed").getCount(), is(1L));
+
+    // When an agent is enqueued.
+    now.addAndGet(Duration.ofMinutes(1).toNanos());
+    suppressor.update(1);
+
+    // Then offers are revived right away and the grace stays.
+    assertThat(calls.revived.get(), is(1));
+    assertThat(suppressor.isSuppressed(), is(false));
+    assertThat(suppressor.getGrace(), is(Duration.ofSeconds(30)));
+  }
+
+  @Test
+  void adaptGraceToIdleTime() {
+    // Given a suppressor that suppressed offers.
+    final AtomicLong now = new AtomicLong(0);
+    final OfferSuppressor suppressor =
+        new OfferSuppressor(
+            Duration.ofSeconds(30),
+            Duration.ofMinutes(1),
+            new MetricRegistry(),
+            "jenkins",
+            now::get);
+    final CountingCalls calls = new CountingCalls();
+    suppressor.connected(calls);
+    suppressor.update(0);
+    now.addAndGet(Duration.ofSeconds(30).toNanos());
+    suppressor.update(0);
+
+    // When offers are revived shortly after they were suppressed.
+    now.addAndGet(Duration.ofSeconds(5).toNanos());
+    suppressor.update(1);
+
+    // Then the grace doubles.
+    assertThat(suppressor.getGrace(), is(Duration.ofMinutes(1)));
+
+    // When this happens again.
+    suppressor.update(0);
+    now.addAndGet(Duration.ofMinutes(1).toNanos());
+    suppressor.update(0);
+    now.addAndGet(Duration.ofSeconds(5).toNanos());
+    suppressor.update(1);
+
+    // Then the grace is capped at the maximum.
+    assertThat(suppressor.getGrace(), is(Duration.ofMinutes(1)));
+
+    // When offers stay suppressed for longer than the maximum.
+    suppressor.update(0);
+    now.addAndGet(Duration.ofMinutes(1).toNanos());
+    suppressor.update(0);
+    now.addAndGet(Duration.ofMinutes(2).toNanos());
+    suppressor.update(1);
+
+    // Then the grace is reset.
+    assertThat(suppressor.getGrace(), is(Duration.ofSeconds(30)));
+    assertThat(calls.suppressed.get(), is(3));
+    assertThat(calls.revived.get(), is(3));
+  }
+
+  @Test
+  void neverSuppressWithoutConnection() {
+    // Given a suppressor without a Mesos subscription.
+    final AtomicLong now = new AtomicLong(0);
+    final OfferSuppressor suppressor =
+        new OfferSuppressor(
+            Duration.ofSeconds(30),
+            Duration.ofMinutes(5),
+            new MetricRegistry(),
+            "jenkins",
+            now::get);
+
+    // When no agent is pending for longer than the grace.
+    suppressor.update(0);
+    now.addAndGet(Duration.ofMinutes(1).toNanos());
+    suppressor.update(0);
+
+    // Then offers are not suppressed.
+    assertThat(suppressor.isSuppressed(), is(false));
+  }
+
+  @Test
+  void keepGaugeOfNewFrameworkWithSameName() {
+    // Given the suppressor of a framework and of its replacement with the same name.
+    final MetricRegistry registry = new MetricRegistry();
+    final OfferSuppressor old =
+        new OfferSuppressor(Duration.ofSeconds(30), Duration.ofMinutes(5), registry, "jenkins");
+    final OfferSuppressor replacement =
+        new OfferSuppressor(Duration.ofSeconds(30), Duration.ofMinutes(5), registry, "jenkins");
+
+    // When the old suppressor is closed.
+    old.close();
+
+    // Then the gauge of the replacement stays registered.
+    assertThat(
+        registry.getGauges().containsKey("mesos.framework.jenkins.offers.suppressing"), is(true));
+
+    // When the replacement is closed as well.
+    replacement.close();
+
+    // Then the gauge is removed.
+    assertThat(registry.getGauges().isEmpty(), is(true));
+  }
+}
@@ -1,21 +1,43 @@
 package org.jenkinsci.plugins.mesos.api;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
 
 import akka.NotUsed;
 import akka.actor.ActorSystem;
 import akka.stream.ActorMaterializer;
+import akka.stream.OverflowStrategy;
 import akka.stream.QueueOfferResult;
 import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
 import akka.stream.javadsl.SourceQueueWithComplete;
+import com.codahale.metrics.MetricRegistry;
 import com.mesosphere.usi.core.models.PodId;
+import com.mesosphere.usi.core.models.PodRecordUpdatedEvent;
+import com.mesosphere.usi.core.models.PodStatusUpdatedEvent;
 import com.mesosphere.usi.core.models.StateEvent;
 import com.mesosphere.usi.core.models.commands.KillPod;
 import com.mesosphere.usi.core.models.commands.SchedulerCommand;
+import com.typesafe.config.ConfigFactory;
 import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jenkinsci.plugins.mesos.TestUtils;
 import org.jenkinsci.plugins.mesos.TestUtils.JenkinsParameterResolver;
 import org.jenkinsci.plugins.mesos.fixture.AgentSpecMother;
@@ -23,6 +45,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import scala.Option;
 
 @ExtendWith(JenkinsParameterResolver.class)
 public class SessionTest {
@@ -36,7 +59,10 @@ public class SessionTest {
   public void testLaunchOverflow(TestUtils.JenkinsRule j) throws Exception {
     // Given a scheduler flow that never processes commands.
     final URL jenkinsUrl = new URL("https://jenkins.com");
-    Settings settings = Settings.load().withCommandQueueBufferSize(1);
+    Settings settings =
+        Settings.load()
+            .withCommandQueueBufferSize(1)
+            .withCommandQueueOverflowMode(CommandQueue.OverflowMode.DROP_NEW);
     final CompletableFuture<StateEvent> ignore = new CompletableFuture<>();
     final Flow<SchedulerCommand, StateEvent, NotUsed> schedulerFlow =
         Flow.of(SchedulerCommand.class).mapAsync(1, command -> ignore);
@@ -73,7 +99,10 @@ public class SessionTest {
   @Test
   void testKillOverflow(TestUtils.JenkinsRule j) throws Exception {
     // Given a scheduler flow that never processes commands.
-    Settings settings = Settings.load().withCommandQueueBufferSize(1);
+    Settings settings =
+        Settings.load()
+            .withCommandQueueBufferSize(1)
+            .withCommandQueueOverflowMode(CommandQueue.OverflowMode.DROP_NEW);
     final CompletableFuture<StateEvent> ignore = new CompletableFuture<>();
     final Flow<SchedulerCommand, StateEvent, NotUsed> schedulerFlow =
         Flow.of(SchedulerCommand.class).mapAsync(1, command -> ignore);
@@ -100,4 +129,281 @@ public class SessionTest {
     QueueOfferResult offerFeedback = result.toCompletableFuture().get();
     assertThat(offerFeedback, is(QueueOfferResult.dropped()));
   }
+
+  @Test
+  void testBatchOffer(TestUtils.JenkinsRule j) throws Exception {
+    // Given a scheduler flow that never processes commands.
+    Settings settings =
+        Settings.load()
+            .withCommandQueueBufferSize(1)
+            .withCommandQueueOverflowMode(CommandQueue.OverflowMode.DROP_NEW);
+    final CompletableFuture<StateEvent> ignore = new CompletableFuture<>();
+    final Flow<SchedulerCommand, StateEvent, NotUsed> schedulerFlow =
+        Flow.of(SchedulerCommand.class).mapAsync(1, command -> ignore);
+
+    // And a running session.
+    SourceQueueWithComplete<SchedulerCommand> sourceQueue =
+        Session.runScheduler(
+                settings,
+                schedulerFlow,
+                event -> logger.debug("Received event {}", event),
+                materializer)
+            .first();
+    Session session = new Session(sourceQueue);
+
+    // When we offer a batch of three commands.
+    List<CompletionStage<QueueOfferResult>> results =
+        session.offerAll(
+            Arrays.asList(
+                new KillPod(new PodId("agent1")),
+                new KillPod(new PodId("agent2")),
+                new KillPod(new PodId("agent3"))));
+
+    // Then one is processed, one is queued and the last one is dropped.
+    assertThat(results.get(0).toCompletableFuture().get(), is(QueueOfferResult.enqueued()));
+    assertThat(results.get(1).toCompletableFuture().get(), is(QueueOfferResult.enqueued()));
+    assertThat(results.get(2).toCompletableFuture().get(), is(QueueOfferResult.dropped()));
+  }
+
+  @Test
+  void testBackpressureOverflow(TestUtils.JenkinsRule j) throws Exception {
+    // Given a scheduler flow that does not process commands until the gate opens.
+    Settings settings =
+        Settings.load()
+            .withCommandQueueBufferSize(1)
+            .withCommandQueueOverflowMode(CommandQueue.OverflowMode.BACKPRESSURE)
+            .withCommandQueueOverflowBufferSize(1);
+    final CompletableFuture<StateEvent> gate = new CompletableFuture<>();
+    final Flow<SchedulerCommand, StateEvent, NotUsed> schedulerFlow =
+        Flow.of(SchedulerCommand.class).mapAsync(1, command -> gate);
+
+    // And a running session with a backpressuring queue.
+    SourceQueueWithComplete<SchedulerCommand> sourceQueue =
+        Session.runScheduler(
+                settings,
+                schedulerFlow,
+                event -> logger.debug("Received event {}", event),
+                materializer)
+            .first();
+    final MetricRegistry registry = new MetricRegistry();
+    Session session =
+        new Session(
+            new CommandQueue(
+                sourceQueue,
+                settings.getCommandQueueOverflowMode(),
+                settings.getCommandQueueOverflowBufferSize(),
+                registry,
+                "backpressure-test"));
+
+    // When we kill five agents.
+    List<CompletionStage<QueueOfferResult>> results = new ArrayList<>();
+    for (int i = 1; i <= 5; i++) {
+      results.add(session.offer(new KillPod(new PodId("agent" + i))));
+    }
+
+    // Then one is processed, one is buffered by the stream, one waits for the stream, one is parked
+    // and the last one is dropped.
+    assertThat(results.get(0).toCompletableFuture().get(), is(QueueOfferResult.enqueued()));
+    assertThat(results.get(1).toCompletableFuture().get(), is(QueueOfferResult.enqueued()));
+    assertThat(results.get(2).toCompletableFuture().isDone(), is(false));
+    assertThat(results.get(3).toCompletableFuture().isDone(), is(false));
+    assertThat(results.get(4).toCompletableFuture().get(), is(QueueOfferResult.dropped()));
+    assertThat(session.getCommandQueue().getDepth(), is(2));
+
+    // When USI drains the queue.
+    gate.complete(new PodStatusUpdatedEvent(new PodId("agent1"), Option.empty()));
+
+    // Then the waiting and parked commands are enqueued.
+    assertThat(results.get(2).toCompletableFuture().get(), is(QueueOfferResult.enqueued()));
+    assertThat(results.get(3).toCompletableFuture().get(), is(QueueOfferResult.enqueued()));
+    assertThat(session.getCommandQueue().getDepth(), is(0));
+    assertThat(
+        registry.meter("mesos.framework.backpressure-test.command-queue.dropped").getCount(),
+        is(1L));
+  }
+
+  @Test
+  void testReconnectWithoutBlocking() throws Exception {
+    // Given an actor system with a single dispatcher thread
+    final ActorSystem singleThreadSystem =
+        ActorSystem.create(
+            "mesos-reconnect-test",
+            ConfigFactory.parseString(
+                    "akka.actor.default-dispatcher { executor = thread-pool-executor, "
+                        + "thread-pool-executor.fixed-pool-size = 1 }")
+                .withFallback(ConfigFactory.load()));
+    final ActorMaterializer singleThreadMaterializer = ActorMaterializer.create(singleThreadSystem);
+    final ScheduledExecutorService mesos = Executors.newSingleThreadScheduledExecutor();
+
+    try {
+      // And a stand-in client that fails to connect three times before it provides a scheduler.
+      final int failures = 3;
+      final AtomicInteger attempts = new AtomicInteger(0);
+      final Flow<SchedulerCommand, StateEvent, NotUsed> schedulerFlow =
+          Session.restartingSchedulerFlow(
+              Duration.ofMillis(10),
+              Duration.ofMillis(50),
+              failures + 1,
+              () -> {
+                final int attempt = attempts.incrementAndGet();
+                final CompletableFuture<Flow<SchedulerCommand, StateEvent, NotUsed>> client =
+                    new CompletableFuture<>();
+                mesos.schedule(
+                    () -> {
+                      if (attempt <= failures) {
+                        client.completeExceptionally(new IllegalStateException("No Mesos master"));
+                      } else {
+                        client.complete(
+                            Flow.of(SchedulerCommand.class)
+                                .map(
+                                    command ->
+                                        (StateEvent)
+                                            new PodStatusUpdatedEvent(
+                                                ((KillPod) command).podId(), Option.empty())));
+                      }
+                    },
+                    200,
+                    TimeUnit.MILLISECONDS);
+                return client;
+              });
+
+      // When the scheduler flow runs
+      final long start = System.nanoTime();
+      final CompletableFuture<StateEvent> firstEvent =
+          Source.repeat((SchedulerCommand) new KillPod(new PodId("agent")))
+              .via(schedulerFlow)
+              .runWith(Sink.head(), singleThreadMaterializer)
+              .toCompletableFuture();
+
+      // Then the dispatcher keeps running other tasks while the client connects
+      long maxDispatcherLatency = 0;
+      while (!firstEvent.isDone()) {
+        final long probe = System.nanoTime();
+        CompletableFuture.runAsync(() -> {}, singleThreadSystem.dispatcher())
+            .get(5, TimeUnit.SECONDS);
+        maxDispatcherLatency = Math.max(maxDispatcherLatency, System.nanoTime() - probe);
+        Thread.sleep(20);
+      }
+
+      // And the scheduler connects after the failed attempts.
+      firstEvent.get(5, TimeUnit.SECONDS);
+      final Duration reconnectTime = Duration.ofNanos(System.nanoTime() - start);
+      logger.info(
+          "Reconnected after {} attempts in {} with a max dispatcher latency of {}",
+          attempts.get(),
+          reconnectTime,
+          Duration.ofNanos(maxDispatcherLatency));
+      assertThat(attempts.get(), is(failures + 1));
+      assertThat(Duration.ofNanos(maxDispatcherLatency).toMillis(), is(lessThan(100L)));
+    } finally {
+      mesos.shutdownNow();
+      singleThreadSystem.terminate();
+    }
+  }
+
+  @Test
+  void testEventOrderPerPod() throws Exception {
+    // Given status events for ten pods
+    final List<StateEvent> events = new ArrayList<>();
+    final Map<PodId, List<StateEvent>> expected = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      final PodId podId = new PodId("agent" + (i % 10));
+      final StateEvent event = new PodStatusUpdatedEvent(podId, Option.empty());
+      events.add(event);
+      expected.computeIfAbsent(podId, id -> new ArrayList<>()).add(event);
+    }
+
+    // When they are handled by four workers
+    final Map<PodId, List<StateEvent>> handled = new ConcurrentHashMap<>();
+    Source.from(events)
+        .runWith(
+            Session.partitionedEventHandler(
+                4,
+                event -> {
+                  final PodStatusUpdatedEvent update = (PodStatusUpdatedEvent) event;
+                  handled
+                      .computeIfAbsent(
+                          update.id(), id -> Collections.synchronizedList(new ArrayList<>()))
+                      .add(update);
+                }),
+            materializer)
+        .toCompletableFuture()
+        .get(30, TimeUnit.SECONDS);
+
+    // Then the events of each pod are handled in order.
+    assertThat(handled.keySet(), is(expected.keySet()));
+    for (Map.Entry<PodId, List<StateEvent>> pod : expected.entrySet()) {
+      final List<StateEvent> podEvents = handled.get(pod.getKey());
+      assertThat(podEvents.size(), is(pod.getValue().size()));
+      for (int i = 0; i < podEvents.size(); i++) {
+        assertThat(podEvents.get(i), is(sameInstance(pod.getValue().get(i))));
+      }
+    }
+  }
+
+  @Test
+  void testRecordAndStatusOrderPerPod() throws Exception {
+    // Given a record and a status update for each of ten pods
+    final List<StateEvent> events = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      final PodId podId = new PodId("agent" + i);
+      events.add(new PodRecordUpdatedEvent(podId, Option.empty()));
+      events.add(new PodStatusUpdatedEvent(podId, Option.empty()));
+    }
+
+    // When they are handled by four workers
+    final Map<PodId, List<StateEvent>> handled = new ConcurrentHashMap<>();
+    Source.from(events)
+        .runWith(
+            Session.partitionedEventHandler(
+                4,
+                event -> {
+                  final PodId podId =
+                      (event instanceof PodRecordUpdatedEvent)
+                          ? ((PodRecordUpdatedEvent) event).id()
+                          : ((PodStatusUpdatedEvent) event).id();
+                  handled
+                      .computeIfAbsent(podId, id -> Collections.synchronizedList(new ArrayList<>()))
+                      .add((StateEvent) event);
+                }),
+            materializer)
+        .toCompletableFuture()
+        .get(30, TimeUnit.SECONDS);
+
+    // Then the record of each pod is handled before its status.
+    assertThat(handled.size(), is(10));
+    for (List<StateEvent> podEvents : handled.values()) {
+      assertThat(podEvents.size(), is(2));
+      assertThat(podEvents.get(0), is(instanceOf(PodRecordUpdatedEvent.class)));
+      assertThat(podEvents.get(1), is(instanceOf(PodStatusUpdatedEvent.class)));
+    }
+  }
+
+  @Test
+  void keepDepthGaugeOfNewFrameworkWithSameName() {
+    // Given the command queue of a framework and of its replacement with the same name.
+    final SourceQueueWithComplete<SchedulerCommand> sourceQueue =
+        Source.<SchedulerCommand>queue(1, OverflowStrategy.dropNew())
+            .to(Sink.ignore())
+            .run(materializer);
+    final MetricRegistry registry = new MetricRegistry();
+    final CommandQueue old =
+        new CommandQueue(sourceQueue, CommandQueue.OverflowMode.DROP_NEW, 0, registry, "jenkins");
+    final CommandQueue replacement =
+        new CommandQueue(sourceQueue, CommandQueue.OverflowMode.DROP_NEW, 0, registry, "jenkins");
+
+    // When the old queue is closed.
+    old.close();
+
+    // Then the gauge of the replacement stays registered.
+    assertThat(
+        registry.getGauges().containsKey("mesos.framework.jenkins.command-queue.depth"), is(true));
+
+    // When the replacement is closed as well.
+    replacement.close();
+
+    // Then the gauge is removed.
+    assertThat(registry.getGauges().isEmpty(), is(true));
+    sourceQueue.complete();
+  }
 }
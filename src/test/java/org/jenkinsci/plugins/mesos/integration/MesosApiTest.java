@@ -3,16 +3,25 @@ package org.jenkinsci.plugins.mesos.integration;
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 
 import akka.actor.ActorSystem;
 import akka.stream.ActorMaterializer;
 import akka.stream.Materializer;
+import com.mesosphere.usi.core.models.PodId;
 import com.mesosphere.utils.mesos.MesosClusterExtension;
 import com.mesosphere.utils.zookeeper.ZookeeperServerExtension;
 import hudson.model.Descriptor.FormException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
@@ -20,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 import org.awaitility.Awaitility;
 import org.jenkinsci.plugins.mesos.MesosAgentSpecTemplate;
 import org.jenkinsci.plugins.mesos.MesosApi;
+import org.jenkinsci.plugins.mesos.MesosCloud;
 import org.jenkinsci.plugins.mesos.MesosJenkinsAgent;
 import org.jenkinsci.plugins.mesos.TestUtils.JenkinsParameterResolver;
 import org.jenkinsci.plugins.mesos.TestUtils.JenkinsRule;
@@ -76,6 +86,38 @@ class MesosApiTest {
     Awaitility.await().atMost(5, TimeUnit.MINUTES).until(agent::isRunning);
   }
 
+  @Test
+  public void shareActorSystem(JenkinsRule j) throws Exception {
+    // Given two frameworks on the same Mesos cluster
+    String mesosUrl = mesosCluster.getMesosUrl().toString();
+    URL jenkinsUrl = j.getURL();
+    MesosApi first =
+        new MesosApi(
+            mesosUrl,
+            jenkinsUrl,
+            System.getProperty("user.name"),
+            "MesosTest-shareActorSystem-1",
+            UUID.randomUUID().toString(),
+            "*",
+            Optional.empty(),
+            Optional.empty());
+    MesosApi second =
+        new MesosApi(
+            mesosUrl,
+            jenkinsUrl,
+            System.getProperty("user.name"),
+            "MesosTest-shareActorSystem-2",
+            UUID.randomUUID().toString(),
+            "*",
+            Optional.empty(),
+            Optional.empty());
+
+    // Then they run on one actor system with separate materializers.
+    assertThat(
+        first.getMaterializer().system(), is(sameInstance(second.getMaterializer().system())));
+    assertThat(first.getMaterializer(), is(not(sameInstance(second.getMaterializer()))));
+  }
+
   @Test
   public void stopAgent(JenkinsRule j) throws Exception {
 
@@ -138,4 +180,139 @@ class MesosApiTest {
     await().atMost(5, TimeUnit.MINUTES).until(agent2::isRunning);
     assertThat(agent2.isRunning(), equalTo(true));
   }
+
+  @Test
+  public void adoptRunningAgent(JenkinsRule j) throws Exception {
+    URL jenkinsUrl = j.getURL();
+    String mesosUrl = mesosCluster.getMesosUrl().toString();
+    final String frameworkId = UUID.randomUUID().toString();
+
+    // Given a Mesos cloud with a running agent
+    final MesosAgentSpecTemplate spec = AgentSpecMother.simple;
+    final MesosCloud cloud =
+        new MesosCloud(
+            mesosUrl,
+            "MesosTest-adopt",
+            frameworkId,
+            "*",
+            System.getProperty("user.name"),
+            jenkinsUrl.toString(),
+            Collections.singletonList(spec));
+    j.jenkins.clouds.add(cloud);
+
+    MesosApi api =
+        new MesosApi(
+            mesosUrl,
+            jenkinsUrl,
+            System.getProperty("user.name"),
+            "MesosTest-adopt",
+            frameworkId,
+            "*",
+            Optional.empty(),
+            Optional.empty());
+    final String name = spec.generateName();
+    MesosJenkinsAgent agent = api.enqueueAgent(name, spec).toCompletableFuture().get();
+    await().atMost(5, TimeUnit.MINUTES).until(agent::isRunning);
+
+    // When Jenkins restarts and reconnects with the same framework id. The first connection is
+    // closed so that only one connection writes the pod record journal of the framework.
+    api.close();
+    MesosApi restarted =
+        new MesosApi(
+            mesosUrl,
+            jenkinsUrl,
+            System.getProperty("user.name"),
+            "MesosTest-adopt",
+            frameworkId,
+            "*",
+            Optional.empty(),
+            Optional.empty());
+
+    // Then the running pod is adopted instead of killed.
+    await().atMost(5, TimeUnit.MINUTES).until(() -> j.jenkins.getNode(name) != null);
+    final MesosJenkinsAgent adopted = restarted.getState().get(new PodId(name));
+    assertThat(adopted.isRunning(), equalTo(true));
+  }
+
+  @Test
+  public void closeStaleConnections(JenkinsRule j) throws Exception {
+    String mesosUrl = mesosCluster.getMesosUrl().toString();
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    int baselineThreads = 0;
+    long baselineHeap = 0;
+
+    // When the cloud is reconfigured with a new framework a hundred times
+    for (int i = 0; i < 100; i++) {
+      final MesosCloud cloud =
+          new MesosCloud(
+              mesosUrl,
+              "MesosTest-closeStaleConnections",
+              null,
+              "*",
+              System.getProperty("user.name"),
+              j.getURL().toString(),
+              Collections.emptyList());
+      j.jenkins.clouds.replaceBy(Collections.singletonList(cloud));
+      j.jenkins.save();
+      MesosApi.getInstance(cloud);
+
+      if (i == 9) {
+        System.gc();
+        baselineThreads = threads.getThreadCount();
+        baselineHeap = memory.getHeapMemoryUsage().getUsed();
+      }
+    }
+
+    // Then the old connections are closed
+    final int expectedThreads = baselineThreads + 10;
+    await().atMost(2, TimeUnit.MINUTES).until(() -> threads.getThreadCount() <= expectedThreads);
+    logger.info(
+        "{} threads after all reconfigurations, {} after ten",
+        threads.getThreadCount(),
+        baselineThreads);
+
+    // And the heap does not grow with each reconfiguration.
+    System.gc();
+    final long heapGrowth = memory.getHeapMemoryUsage().getUsed() - baselineHeap;
+    logger.info("Heap grew by {} bytes", heapGrowth);
+    assertThat(heapGrowth, is(lessThan(64L * 1024 * 1024)));
+  }
+
+  @Test
+  public void killAgentsOfStaleFramework(JenkinsRule j) throws Exception {
+    // Given a Mesos cloud with an online agent
+    String mesosUrl = mesosCluster.getMesosUrl().toString();
+    final MesosAgentSpecTemplate spec = AgentSpecMother.simple;
+    final MesosCloud cloud =
+        new MesosCloud(
+            mesosUrl,
+            "MesosTest-killStale",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Collections.singletonList(spec));
+    j.jenkins.clouds.add(cloud);
+    final String name = spec.generateName();
+    final MesosJenkinsAgent agent = (MesosJenkinsAgent) cloud.startAgent(name, spec).get();
+    await().atMost(5, TimeUnit.MINUTES).until(agent::isRunning);
+
+    // When the cloud is replaced by one with a new framework id
+    final MesosCloud replacement =
+        new MesosCloud(
+            mesosUrl,
+            "MesosTest-killStale",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Collections.singletonList(spec));
+    j.jenkins.clouds.replaceBy(Collections.singletonList(replacement));
+    j.jenkins.save();
+
+    // Then the agent of the stale framework is killed and removed from Jenkins.
+    await().atMost(5, TimeUnit.MINUTES).until(agent::isKilled);
+    await().atMost(1, TimeUnit.MINUTES).until(() -> j.jenkins.getNode(name) == null);
+  }
 }
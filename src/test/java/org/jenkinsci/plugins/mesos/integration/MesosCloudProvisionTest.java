@@ -3,9 +3,11 @@ package org.jenkinsci.plugins.mesos.integration;
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import akka.actor.ActorSystem;
 import akka.stream.ActorMaterializer;
@@ -13,16 +15,22 @@ import com.mesosphere.utils.mesos.MesosClusterExtension;
 import com.mesosphere.utils.zookeeper.ZookeeperServerExtension;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.Node;
 import hudson.model.Node.Mode;
 import hudson.model.labels.LabelAtom;
 import hudson.slaves.NodeProvisioner;
 import hudson.tasks.Builder;
 import hudson.tasks.Shell;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import jenkins.metrics.api.Metrics;
 import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
 import okhttp3.Response;
 import org.jenkinsci.plugins.mesos.JenkinsConfigClient;
 import org.jenkinsci.plugins.mesos.MesosAgentSpecTemplate;
@@ -143,6 +151,278 @@ public class MesosCloudProvisionTest {
     assertThat(Jenkins.getInstanceOrNull().getNodes(), hasSize(1));
   }
 
+  @Test
+  public void keepWarmAgentPool(TestUtils.JenkinsRule j) throws Exception {
+    // Given a cloud with a template that keeps two idle agents
+    LabelAtom label = new LabelAtom("label");
+    final MesosAgentSpecTemplate spec =
+        new MesosAgentSpecTemplate(
+            label.toString(),
+            Mode.EXCLUSIVE,
+            "0.1",
+            "32",
+            1,
+            1,
+            1,
+            "0",
+            "",
+            "",
+            Collections.emptyList(),
+            null,
+            null,
+            null);
+    spec.setMinIdle(2);
+    MesosCloud cloud =
+        new MesosCloud(
+            mesosCluster.getMesosUrl().toString(),
+            "MesosTest",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Collections.singletonList(spec));
+    j.jenkins.clouds.add(cloud);
+
+    // When the pool is reconciled twice
+    cloud.reconcileAgentPools();
+    cloud.reconcileAgentPools();
+
+    // Then two idle agents come online.
+    await()
+        .atMost(5, TimeUnit.MINUTES)
+        .until(
+            () ->
+                Jenkins.get().getNodes().stream()
+                        .filter(node -> node.toComputer() != null && node.toComputer().isOnline())
+                        .count()
+                    == 2);
+    assertThat(Jenkins.get().getNodes(), hasSize(2));
+  }
+
+  @Test
+  @Timeout(value = 5, unit = TimeUnit.MINUTES)
+  public void runBuildPerExecutorOnSingleUseAgent(TestUtils.JenkinsRule j) throws Exception {
+    // Given a single-use agent with two executors
+    LabelAtom label = new LabelAtom("multi");
+    final MesosAgentSpecTemplate spec =
+        new MesosAgentSpecTemplate(
+            label.toString(),
+            Mode.EXCLUSIVE,
+            "0.1",
+            "32",
+            1,
+            2,
+            2,
+            "0",
+            "",
+            "",
+            Collections.emptyList(),
+            null,
+            null,
+            null);
+    MesosCloud cloud =
+        new MesosCloud(
+            mesosCluster.getMesosUrl().toString(),
+            "MesosTest",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Collections.singletonList(spec));
+    final Node agent =
+        cloud
+            .startAgents(
+                Collections.singletonList(spec.generateName()), Collections.singletonList(2), spec)
+            .get(0)
+            .get();
+    assertThat(agent.getNumExecutors(), is(2));
+
+    // When two builds are queued for its label
+    final FreeStyleProject first = j.createFreeStyleProject("multi-first");
+    first.getBuildersList().add(new Shell("sleep 5"));
+    first.setAssignedLabel(label);
+    final FreeStyleProject second = j.createFreeStyleProject("multi-second");
+    second.getBuildersList().add(new Shell("sleep 5"));
+    second.setAssignedLabel(label);
+    final Future<FreeStyleBuild> firstBuild = first.scheduleBuild2(0);
+    final Future<FreeStyleBuild> secondBuild = second.scheduleBuild2(0);
+
+    // Then both run on the agent
+    assertThat(
+        j.assertBuildStatusSuccess(firstBuild).getBuiltOnStr(), equalTo(agent.getNodeName()));
+    assertThat(
+        j.assertBuildStatusSuccess(secondBuild).getBuiltOnStr(), equalTo(agent.getNodeName()));
+
+    // And the agent does not accept a third one.
+    assertThat(agent.toComputer().isAcceptingTasks(), is(false));
+  }
+
+  @Test
+  @Timeout(value = 5, unit = TimeUnit.MINUTES)
+  public void rerouteToFallbackLabelAtOfferMatchDeadline(TestUtils.JenkinsRule j) throws Exception {
+    // Given a template no Mesos agent can offer with a fallback label
+    final MesosAgentSpecTemplate unofferable = offerMatchTemplate("gpu", "1000");
+    unofferable.setOfferMatchDeadlineSeconds(2);
+    unofferable.setFallbackLabel("small");
+    final MesosAgentSpecTemplate fallback = offerMatchTemplate("small", "0.1");
+    MesosCloud cloud =
+        new MesosCloud(
+            mesosCluster.getMesosUrl().toString(),
+            "MesosFallbackTest",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Arrays.asList(unofferable, fallback));
+    j.jenkins.clouds.add(cloud);
+    final long rerouted = meterCount("mesos.cloud.gpu.offer-deadline.rerouted");
+
+    // When an agent is started for the unofferable template
+    final Future<Node> node = cloud.startAgent(unofferable.generateName(), unofferable);
+    await().atMost(10, TimeUnit.SECONDS).until(() -> j.jenkins.getNodes().size() == 1);
+    final MesosJenkinsAgent missed = (MesosJenkinsAgent) j.jenkins.getNodes().get(0);
+
+    // Then it is killed at the deadline and its workload comes online on the fallback label
+    final MesosJenkinsAgent replacement = (MesosJenkinsAgent) node.get();
+    assertThat(missed.isOfferMatchDeadlineExceeded(), is(true));
+    assertThat(replacement.getLabelString(), is("small"));
+    assertThat(replacement.getComputer().isOnline(), is(true));
+    assertThat(j.jenkins.getNodes(), hasSize(1));
+    assertThat(meterCount("mesos.cloud.gpu.offer-deadline.rerouted"), is(rerouted + 1));
+
+    // And the killed agent is not counted as pending anymore.
+    assertThat(gaugeValue("mesos.framework.MesosFallbackTest.agents.gpu.pending"), is(0L));
+    assertThat(gaugeValue("mesos.framework.MesosFallbackTest.agents.gpu.terminal"), is(1L));
+  }
+
+  @Test
+  @Timeout(value = 5, unit = TimeUnit.MINUTES)
+  public void rerouteToOtherCloudAtOfferMatchDeadline(TestUtils.JenkinsRule j) throws Exception {
+    // Given a template no Mesos agent can offer
+    final MesosAgentSpecTemplate unofferable = offerMatchTemplate("gpu", "1000");
+    unofferable.setOfferMatchDeadlineSeconds(2);
+    MesosCloud cloud =
+        new MesosCloud(
+            mesosCluster.getMesosUrl().toString(),
+            "MesosDeadlineTest",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Collections.singletonList(unofferable));
+    j.jenkins.clouds.add(cloud);
+
+    // And another cloud with a template that has all of its labels
+    final MesosAgentSpecTemplate other = offerMatchTemplate("gpu linux", "0.1");
+    MesosCloud otherCloud =
+        new MesosCloud(
+            mesosCluster.getMesosUrl().toString(),
+            "MesosOtherTest",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Collections.singletonList(other));
+    j.jenkins.clouds.add(otherCloud);
+
+    // When an agent is started for the unofferable template
+    final Node node = cloud.startAgent(unofferable.generateName(), unofferable).get();
+
+    // Then its workload comes online on the other cloud.
+    assertThat(node.getLabelString(), is("gpu linux"));
+    assertThat(node.toComputer().isOnline(), is(true));
+    assertThat(j.jenkins.getNodes(), hasSize(1));
+  }
+
+  @Test
+  @Timeout(value = 5, unit = TimeUnit.MINUTES)
+  public void doNotRerouteReroutedAgent(TestUtils.JenkinsRule j) throws Exception {
+    // Given a template no Mesos agent can offer with an unofferable fallback label
+    final MesosAgentSpecTemplate unofferable = offerMatchTemplate("gpu", "1000");
+    unofferable.setOfferMatchDeadlineSeconds(2);
+    unofferable.setFallbackLabel("large");
+    final MesosAgentSpecTemplate fallback = offerMatchTemplate("large", "1000");
+    fallback.setOfferMatchDeadlineSeconds(2);
+    fallback.setFallbackLabel("gpu");
+    MesosCloud cloud =
+        new MesosCloud(
+            mesosCluster.getMesosUrl().toString(),
+            "MesosDeadlineTest",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Arrays.asList(unofferable, fallback));
+    j.jenkins.clouds.add(cloud);
+    final long exceeded = meterCount("mesos.cloud.large.offer-deadline.exceeded");
+    final long rerouted = meterCount("mesos.cloud.large.offer-deadline.rerouted");
+
+    // When an agent is started for the unofferable template
+    final Future<Node> node = cloud.startAgent(unofferable.generateName(), unofferable);
+
+    // Then the re-routed agent misses its deadline as well and fails without another re-route.
+    final ExecutionException ex = assertThrows(ExecutionException.class, node::get);
+    assertThat(ex.getMessage(), containsString("No offer matched"));
+    assertThat(meterCount("mesos.cloud.large.offer-deadline.exceeded"), is(exceeded + 1));
+    assertThat(meterCount("mesos.cloud.large.offer-deadline.rerouted"), is(rerouted));
+  }
+
+  @Test
+  @Timeout(value = 5, unit = TimeUnit.MINUTES)
+  public void serveEndpointsPerCloud(TestUtils.JenkinsRule j) throws Exception {
+    // Given two clouds with one running agent each
+    final MesosAgentSpecTemplate firstSpec = offerMatchTemplate("first", "0.1");
+    final MesosCloud first =
+        new MesosCloud(
+            mesosCluster.getMesosUrl().toString(),
+            "MesosFirstTest",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Collections.singletonList(firstSpec));
+    final MesosAgentSpecTemplate secondSpec = offerMatchTemplate("second", "0.1");
+    final MesosCloud second =
+        new MesosCloud(
+            mesosCluster.getMesosUrl().toString(),
+            "MesosSecondTest",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Collections.singletonList(secondSpec));
+    j.jenkins.clouds.add(first);
+    j.jenkins.clouds.add(second);
+    final String firstAgent = firstSpec.generateName();
+    final String secondAgent = secondSpec.generateName();
+    first.startAgent(firstAgent, firstSpec).get();
+    second.startAgent(secondAgent, secondSpec).get();
+
+    // When the timelines of both clouds are fetched
+    final JSONObject firstTimelines = fetchJSON(j, first, "timeline");
+    final JSONObject secondTimelines = fetchJSON(j, second, "timeline");
+
+    // Then each cloud serves only the timeline of its own agent.
+    assertThat(firstTimelines.size(), is(1));
+    assertThat(firstTimelines.has(firstAgent), is(true));
+    assertThat(secondTimelines.size(), is(1));
+    assertThat(secondTimelines.has(secondAgent), is(true));
+
+    // And a cloud that never connected serves empty offer diagnostics.
+    final MesosCloud idle =
+        new MesosCloud(
+            "http://localhost:1",
+            "MesosIdleTest",
+            null,
+            "*",
+            System.getProperty("user.name"),
+            j.getURL().toString(),
+            Collections.emptyList());
+    j.jenkins.clouds.add(idle);
+    assertThat(fetchJSON(j, first, "offerDiagnostics").isEmpty(), is(true));
+    assertThat(fetchJSON(j, idle, "offerDiagnostics").isEmpty(), is(true));
+  }
+
   @Test
   @Timeout(value = 5, unit = TimeUnit.MINUTES)
   public void runSimpleBuild(TestUtils.JenkinsRule j) throws Exception {
@@ -173,4 +453,38 @@ public class MesosCloudProvisionTest {
     // Then it finishes successfully and the logs contain our command.
     assertThat(j.getLog(build), containsString("echo Hello"));
   }
+
+  private static MesosAgentSpecTemplate offerMatchTemplate(String label, String cpus) {
+    return new MesosAgentSpecTemplate(
+        label,
+        Mode.EXCLUSIVE,
+        cpus,
+        "32",
+        1,
+        1,
+        1,
+        "0",
+        "",
+        "",
+        Collections.emptyList(),
+        null,
+        null,
+        null);
+  }
+
+  private static JSONObject fetchJSON(TestUtils.JenkinsRule j, MesosCloud cloud, String endpoint)
+      throws Exception {
+    final String path =
+        String.format("cloud/MesosCloud/framework/%s/%s", cloud.getFrameworkId(), endpoint);
+    return JSONObject.fromObject(
+        j.createWebClient().goTo(path, "application/json").getWebResponse().getContentAsString());
+  }
+
+  private static long meterCount(String name) {
+    return Metrics.metricRegistry().meter(name).getCount();
+  }
+
+  private static Object gaugeValue(String name) {
+    return Metrics.metricRegistry().getGauges().get(name).getValue();
+  }
 }